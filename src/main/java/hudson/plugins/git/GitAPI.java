@@ -30,6 +30,9 @@ import hudson.Launcher;
 import hudson.Launcher.LocalLauncher;
 import hudson.model.TaskListener;
 import hudson.plugins.git.util.GitConstants;
+import hudson.plugins.git.util.ReferenceCache;
+import hudson.plugins.git.util.RepositoryPool;
+import hudson.plugins.git.util.WorkspaceCleaner;
 import hudson.remoting.VirtualChannel;
 import hudson.util.ArgumentListBuilder;
 import java.io.BufferedReader;
@@ -42,33 +45,65 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.fnmatch.FileNameMatcher;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.submodule.SubmoduleWalk;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.util.FS;
 
 public class GitAPI implements IGitAPI {
     private static final Logger LOGGER = Logger.getLogger(GitAPI.class.getName());
+
+    /**
+     * Maximum number of revisions passed to a single git process by {@link #showRevisions(Collection)}.
+     */
+    private static final int SHOW_REVISIONS_BATCH_SIZE = 500;
+
+    /**
+     * Major and minor version in the output of {@code git --version}.
+     */
+    private static final Pattern GIT_VERSION = Pattern.compile("(\\d+)\\.(\\d+)");
+
+    /**
+     * Set to false to answer read-only queries (rev-parse, merge-base, rev-list, ls-tree, describe and
+     * tag lookups) through git(1) instead of the in-process JGit repository.
+     * git(1) is still used as a fallback whenever JGit cannot answer a query.
+     */
+    public static boolean JGIT_QUERIES = !Boolean.getBoolean(GitAPI.class.getName() + ".disableJGitQueries");
+
     private Launcher launcher;
     private FilePath workspace;
     private TaskListener listener;
@@ -88,8 +123,7 @@ public class GitAPI implements IGitAPI {
 
         if (hasGitRepo()) {//Wrap file repository if exists in order to perform operations and initialize jGitDelegate
             try {
-                File gitDir = RepositoryCache.FileKey.resolve(new File(workspace.getRemote()), FS.DETECTED);
-                setDelegate(Git.wrap(new FileRepositoryBuilder().setGitDir(gitDir).build()));
+                openDelegate();
             } catch (IOException e) {
                 e.printStackTrace(listener.getLogger());
             }
@@ -102,14 +136,36 @@ public class GitAPI implements IGitAPI {
 	 */
 	public void close() {
         if (jGitDelegate != null) {
-            jGitDelegate.close();
+            RepositoryPool.getInstance().release(jGitDelegate.getRepository());
             jGitDelegate = null;
         }
 	}
-    
-    private void setDelegate(Git delegate) {
+
+    /**
+     * Borrows the repository of the workspace from the node-local {@link RepositoryPool}
+     * and wraps it into jGitDelegate.
+     *
+     * @throws IOException if the repository cannot be opened.
+     */
+    private void openDelegate() throws IOException {
+        close();
+        File gitDir = RepositoryCache.FileKey.resolve(new File(workspace.getRemote()), FS.DETECTED);
+        if (gitDir == null) {
+            throw new IOException("No git repository found in " + workspace.getRemote());
+        }
+        jGitDelegate = Git.wrap(RepositoryPool.getInstance().acquire(gitDir));
+    }
+
+    /**
+     * Drops the pooled repository of the workspace, which is about to be deleted or re-created.
+     */
+    private void invalidateDelegate() {
         close();
-        jGitDelegate = delegate;
+        File gitDir = RepositoryCache.FileKey.resolve(new File(workspace.getRemote()), FS.DETECTED);
+        if (gitDir == null) {
+            gitDir = new File(workspace.getRemote(), Constants.DOT_GIT);
+        }
+        RepositoryPool.getInstance().invalidate(gitDir);
     }
 
     /**
@@ -143,9 +199,13 @@ public class GitAPI implements IGitAPI {
             throw new GitException(Messages.GitAPI_Repository_FailedInitTwiceMsg());
         }
         try {
-            setDelegate(Git.init().setDirectory(new File(workspace.getRemote())).call());
+            invalidateDelegate();
+            Git.init().setDirectory(new File(workspace.getRemote())).call().getRepository().close();
+            openDelegate();
         } catch (GitAPIException ex) {
             throw new GitException(ex);
+        } catch (IOException ex) {
+            throw new GitException(ex);
         }
     }
 
@@ -196,17 +256,31 @@ public class GitAPI implements IGitAPI {
     }
 
     public void fetch(String repository, String refspec) throws GitException {
+        fetch(repository, refspec, 0);
+    }
+
+    private void fetch(String repository, String refspec, int depth) throws GitException {
+        fetch(repository, refspec != null ? Collections.singletonList(refspec) : null, depth);
+    }
+
+    private void fetch(String repository, List<String> refspecs, int depth) throws GitException {
         listener.getLogger().println(
             "Fetching upstream changes"
-                + (repository != null ? " from " + repository : ""));
+                + (repository != null ? " from " + repository : "")
+                + (depth > 0 ? " with a history of " + depth + " commits" : ""));
 
         ArgumentListBuilder args = new ArgumentListBuilder();
         args.add("fetch", "-t");
+        if (depth > 0) {
+            args.add("--depth=" + depth);
+        }
 
         if (repository != null) {
             args.add(repository);
-            if (refspec != null) {
-                args.add(refspec);
+            if (refspecs != null) {
+                for (String refspec : refspecs) {
+                    args.add(refspec);
+                }
             }
         }
 
@@ -217,16 +291,74 @@ public class GitAPI implements IGitAPI {
         fetch(null, null);
     }
 
+    public void deepen(RemoteConfig remoteRepository, int commits) throws GitException {
+        listener.getLogger().println("Deepening the history by " + commits + " commits from "
+            + remoteRepository.getName());
+        ArgumentListBuilder args = new ArgumentListBuilder();
+        args.add("fetch");
+        if (isDeepenSupported(launchCommand("--version"))) {
+            args.add("--deepen=" + commits);
+        } else {
+            // older git only fetches to a depth counted from the fetched heads
+            String depth = launchCommand("rev-list", "--count", "HEAD").trim();
+            try {
+                args.add("--depth=" + (Integer.parseInt(depth) + commits));
+            } catch (NumberFormatException e) {
+                throw new GitException("Could not count the commits of the shallow history: " + depth, e);
+            }
+        }
+        args.add(remoteRepository.getURIs().get(0).toPrivateString());
+        for (String refSpec : getFetchRefSpecs(remoteRepository)) {
+            args.add(refSpec);
+        }
+        launchCommand(args);
+    }
+
+    /**
+     * Tells whether the git version printed by {@code git --version} supports {@code git fetch --deepen}, which
+     * was added in git 2.11.
+     *
+     * @param version output of {@code git --version}.
+     * @return false if the version is older or cannot be parsed.
+     */
+    static boolean isDeepenSupported(String version) {
+        Matcher matcher = GIT_VERSION.matcher(version);
+        if (!matcher.find()) {
+            return false;
+        }
+        int major = Integer.parseInt(matcher.group(1));
+        return major > 2 || (major == 2 && Integer.parseInt(matcher.group(2)) >= 11);
+    }
+
+    public boolean isShallow() throws GitException {
+        try {
+            return workspace.child(Constants.DOT_GIT).child("shallow").exists();
+        } catch (Exception e) {
+            throw new GitException("Could not check for a shallow repository", e);
+        }
+    }
+
     /**
      * Start from scratch and clone the whole repository. Cloning into an
      * existing directory is not allowed, so the workspace is first deleted
-     * entirely, then <tt>git clone</tt> is performed.
+     * entirely, then <tt>git clone</tt> is performed. Only the refs covered by
+     * the fetch refspecs of the remote config are cloned.
      *
      * @param remoteConfig remote config
      * @throws GitException if deleting or cloning the workspace fails
      */
     public void clone_cgit(final RemoteConfig remoteConfig) throws GitException {
+        clone_cgit(remoteConfig, 0);
+    }
+
+    public void clone_cgit(final RemoteConfig remoteConfig, final int depth) throws GitException {
+        clone_cgit(remoteConfig, depth, null);
+    }
+
+    public void clone_cgit(final RemoteConfig remoteConfig, final int depth, final String reference)
+        throws GitException {
         listener.getLogger().println(Messages.GitAPI_Repository_CloningRepositoryMsg(remoteConfig.getName()));
+        invalidateDelegate();
         try {
             workspace.deleteRecursive();
         } catch (Exception ex) {
@@ -257,9 +389,18 @@ public class GitAPI implements IGitAPI {
                         throw new GitException("Could not init " + workspace, e);
                     }
 
-                    RefSpec refSpec = new RefSpec("+refs/heads/*:refs/remotes/" + origin + "/*");
+                    if (reference != null) {
+                        listener.getLogger().println("Using reference repository " + reference);
+                        ReferenceCache.link(new File(workspace, Constants.DOT_GIT), new File(reference));
+                    }
+
+                    List<String> refSpecs = getFetchRefSpecs(remoteConfig);
+                    if (refSpecs.isEmpty()) {
+                        refSpecs.add("+refs/heads/*:refs/remotes/" + origin + "/*");
+                    }
 
-                    fetch(url, refSpec.toString());
+                    fetch(url, refSpecs, depth);
+                    openDelegate();
 
                     return Messages.GitAPI_Repository_CloneSuccessMsg(source.toPrivateString(),
                             workspace.getAbsolutePath());
@@ -272,6 +413,7 @@ public class GitAPI implements IGitAPI {
     
     public void clone(final RemoteConfig remoteConfig) throws GitException {
         listener.getLogger().println(Messages.GitAPI_Repository_CloningRepositoryMsg(remoteConfig.getName()));
+        invalidateDelegate();
         try {
             workspace.deleteRecursive();
         } catch (Exception ex) {
@@ -290,11 +432,12 @@ public class GitAPI implements IGitAPI {
                 public String invoke(File workspace,
                                      VirtualChannel channel) throws IOException {
                     try {
-                        setDelegate(Git.cloneRepository()
+                        Git.cloneRepository()
                             .setDirectory(workspace.getAbsoluteFile())
                             .setURI(source.toPrivateString())
                             .setRemote(remoteConfig.getName())
-                            .call());
+                            .call().getRepository().close();
+                        openDelegate();
                     } catch (Exception ex) {
                         throw new GitException(ex);
                     } 
@@ -309,21 +452,47 @@ public class GitAPI implements IGitAPI {
 
     public void clean() throws GitException {
         verifyGitRepository();
+        long start = System.currentTimeMillis();
+        WorkspaceCleaner cleaner = new WorkspaceCleaner(false);
         try {
-            jGitDelegate.clean()
-                .setCleanDirectories(true)
-                .call();
+            cleaner.clean(jGitDelegate.getRepository());
         } catch (Exception ex) {
             throw new GitException(ex);
-        }  
+        }
+        reportClean(cleaner, start);
+    }
+
+    private void reportClean(WorkspaceCleaner cleaner, long start) {
+        listener.getLogger().println("Removed " + cleaner.getFiles() + " untracked files (" + cleaner.getBytes()
+            + " bytes) in " + (System.currentTimeMillis() - start) + " ms");
     }
 
     public ObjectId revParse(String revName) throws GitException {
+        if (useJGitQueries()) {
+            try {
+                ObjectId id = jGitDelegate.getRepository().resolve(revName);
+                if (id != null) {
+                    return id;
+                }
+            } catch (Exception e) {
+                logJGitFallback("rev-parse " + revName, e);
+            }
+        }
         String result = launchCommand("rev-parse", revName);
         return ObjectId.fromString(firstLine(result).trim());
     }
 
     public String describe(String commitIsh) throws GitException {
+        if (useJGitQueries()) {
+            try {
+                String description = jGitDelegate.describe().setTarget(commitIsh).call();
+                if (description != null) {
+                    return description;
+                }
+            } catch (Exception e) {
+                logJGitFallback("describe " + commitIsh, e);
+            }
+        }
         String result = launchCommand("describe", "--tags", commitIsh);
         return firstLine(result).trim();
     }
@@ -401,6 +570,52 @@ public class GitAPI implements IGitAPI {
         return revShow;
     }
 
+    /**
+     * Shows the revisions with {@code git log --no-walk}, at most {@link #SHOW_REVISIONS_BATCH_SIZE} per process.
+     */
+    public Map<String, List<String>> showRevisions(Collection<Revision> revisions) throws GitException {
+        Map<String, List<String>> revShows = new HashMap<String, List<String>>();
+        List<String> batch = new ArrayList<String>();
+        for (Iterator<Revision> it = revisions.iterator(); it.hasNext(); ) {
+            String revName = it.next().getSha1String();
+            if (revName != null) {
+                batch.add(revName);
+            }
+            if (!batch.isEmpty() && (batch.size() == SHOW_REVISIONS_BATCH_SIZE || !it.hasNext())) {
+                ArgumentListBuilder args = new ArgumentListBuilder("log", "--no-walk", "--no-abbrev",
+                    "--format=raw", "-M", "--raw");
+                for (String sha1 : batch) {
+                    args.add(sha1);
+                }
+                splitRevisions(launchCommand(args), revShows);
+                batch.clear();
+            }
+        }
+        return revShows;
+    }
+
+    /**
+     * Splits the output of {@code git log --format=raw} at the {@code commit} lines.
+     */
+    private static void splitRevisions(String log, Map<String, List<String>> revShows) {
+        List<String> lines = null;
+        for (String line : log.split("\\n")) {
+            if (line.startsWith("commit ")) {
+                // drop the blank line git log puts between commits
+                while (lines != null && !lines.isEmpty() && lines.get(lines.size() - 1).length() == 0) {
+                    lines.remove(lines.size() - 1);
+                }
+                lines = new ArrayList<String>();
+                int end = line.indexOf(' ', "commit ".length());
+                revShows.put(end == -1 ? line.substring("commit ".length())
+                    : line.substring("commit ".length(), end), lines);
+            }
+            if (lines != null) {
+                lines.add(line);
+            }
+        }
+    }
+
     /**
      * Merge any changes into the head.
      *
@@ -451,20 +666,45 @@ public class GitAPI implements IGitAPI {
     }
 
     /**
-     * Cleans submodules
+     * Cleans submodules like {@code git clean -fdx}, removing ignored files as well
      *
-     * @param recursive if true, will recursively clean submodules (requres git>=1.6.5)
-     * @throws GitException if executing the git command fails
+     * @param recursive if true, will recursively clean submodules
+     * @throws GitException if cleaning fails
      */
     public void submoduleClean(boolean recursive) throws GitException {
-        ArgumentListBuilder args = new ArgumentListBuilder();
-        args.add("submodule", "foreach");
-        if (recursive) {
-            args.add("--recursive");
+        verifyGitRepository();
+        long start = System.currentTimeMillis();
+        WorkspaceCleaner cleaner = new WorkspaceCleaner(true);
+        try {
+            cleanSubmodules(jGitDelegate.getRepository(), cleaner, recursive);
+        } catch (Exception ex) {
+            throw new GitException(ex);
         }
-        args.add("git clean -fdx");
+        reportClean(cleaner, start);
+    }
 
-        launchCommand(args);
+    private void cleanSubmodules(Repository parent, WorkspaceCleaner cleaner, boolean recursive)
+        throws IOException, InterruptedException {
+        SubmoduleWalk walk = SubmoduleWalk.forIndex(parent);
+        try {
+            while (walk.next()) {
+                Repository submodule = walk.getRepository();
+                if (submodule == null) {
+                    // not checked out
+                    continue;
+                }
+                try {
+                    cleaner.clean(submodule);
+                    if (recursive) {
+                        cleanSubmodules(submodule, cleaner, true);
+                    }
+                } finally {
+                    submodule.close();
+                }
+            }
+        } finally {
+            walk.release();
+        }
     }
 
     /**
@@ -908,7 +1148,10 @@ public class GitAPI implements IGitAPI {
             // First, checkout to detached HEAD, so we can delete the branch.
             launchCommand("checkout", "-f", commitish);
 
-            if (null != branch) {
+            if (null != branch && isSparseCheckout()) {
+                // JGit would materialize the whole tree again
+                launchCommand("checkout", "-f", "-B", branch, commitish);
+            } else if (null != branch) {
                 jGitDelegate.checkout()
                     .setForce(true)
                     .setStartPoint(commitish)
@@ -921,8 +1164,53 @@ public class GitAPI implements IGitAPI {
         }
     }
 
+    public void setSparseCheckout(List<String> patterns) throws GitException {
+        verifyGitRepository();
+        FilePath sparseCheckout = workspace.child(Constants.DOT_GIT).child("info").child("sparse-checkout");
+        try {
+            if (patterns != null) {
+                StringBuilder content = new StringBuilder();
+                for (String pattern : patterns) {
+                    content.append(pattern).append('\n');
+                }
+                sparseCheckout.write(content.toString(), "UTF-8");
+                launchCommand("config", "core.sparseCheckout", "true");
+            } else if (sparseCheckout.exists()) {
+                listener.getLogger().println("Restoring the full working tree");
+                sparseCheckout.write("/*\n", "UTF-8");
+                try {
+                    launchCommand("read-tree", "-mu", "HEAD");
+                } catch (GitException e) {
+                    // nothing checked out yet
+                    LOGGER.log(Level.FINE, "Could not update the working tree", e);
+                }
+                launchCommand("config", "core.sparseCheckout", "false");
+                sparseCheckout.delete();
+            }
+        } catch (IOException e) {
+            throw new GitException("Could not configure the sparse checkout", e);
+        } catch (InterruptedException e) {
+            throw new GitException("Could not configure the sparse checkout", e);
+        }
+    }
+
+    private boolean isSparseCheckout() throws GitException {
+        try {
+            return workspace.child(Constants.DOT_GIT).child("info").child("sparse-checkout").exists();
+        } catch (Exception e) {
+            throw new GitException("Could not check for a sparse checkout", e);
+        }
+    }
+
     public boolean tagExists(String tagName) throws GitException {
         tagName = tagName.replace(' ', '_');
+        if (useJGitQueries()) {
+            try {
+                return jGitDelegate.getRepository().getRef(Constants.R_TAGS + tagName) != null;
+            } catch (Exception e) {
+                logJGitFallback("tag -l " + tagName, e);
+            }
+        }
         return launchCommand("tag", "-l", tagName).trim().equals(tagName);
     }
 
@@ -945,6 +1233,16 @@ public class GitAPI implements IGitAPI {
     }
 
     public List<IndexEntry> lsTree(String treeIsh) throws GitException {
+        if (useJGitQueries()) {
+            try {
+                List<IndexEntry> entries = lsTreeJGit(treeIsh);
+                if (entries != null) {
+                    return entries;
+                }
+            } catch (Exception e) {
+                logJGitFallback("ls-tree " + treeIsh, e);
+            }
+        }
         List<IndexEntry> entries = new ArrayList<IndexEntry>();
         String result = launchCommand("ls-tree", treeIsh);
 
@@ -963,14 +1261,87 @@ public class GitAPI implements IGitAPI {
         return entries;
     }
 
+    /**
+     * Lists the direct children of a tree-ish the way <tt>git ls-tree</tt> does.
+     *
+     * @return entries, or null if the tree-ish cannot be resolved.
+     */
+    private List<IndexEntry> lsTreeJGit(String treeIsh) throws IOException {
+        Repository db = jGitDelegate.getRepository();
+        ObjectId id = db.resolve(treeIsh);
+        if (id == null) {
+            return null;
+        }
+        List<IndexEntry> entries = new ArrayList<IndexEntry>();
+        RevWalk walk = new RevWalk(db);
+        TreeWalk treeWalk = new TreeWalk(db);
+        try {
+            treeWalk.addTree(walk.parseTree(id));
+            treeWalk.setRecursive(false);
+            while (treeWalk.next()) {
+                FileMode mode = treeWalk.getFileMode(0);
+                entries.add(new IndexEntry(String.format("%06o", mode.getBits()),
+                    Constants.typeString(mode.getObjectType()), treeWalk.getObjectId(0).name(),
+                    treeWalk.getPathString()));
+            }
+        } finally {
+            treeWalk.release();
+            walk.release();
+        }
+        return entries;
+    }
+
     public List<ObjectId> revListAll() throws GitException {
+        if (useJGitQueries()) {
+            try {
+                return revListJGit(jGitDelegate.getRepository().getAllRefs().values());
+            } catch (Exception e) {
+                logJGitFallback("rev-list --all", e);
+            }
+        }
         return revList("--all");
     }
 
     public List<ObjectId> revListBranch(String branchId) throws GitException {
+        if (useJGitQueries()) {
+            try {
+                ObjectId id = jGitDelegate.getRepository().resolve(branchId);
+                if (id != null) {
+                    return revListJGit(Collections.<Ref>singletonList(new ObjectIdRef.Unpeeled(Ref.Storage.NEW,
+                        branchId, id)));
+                }
+            } catch (Exception e) {
+                logJGitFallback("rev-list " + branchId, e);
+            }
+        }
         return revList(branchId);
     }
 
+    /**
+     * Lists every commit reachable from the given refs, newest first, like <tt>git rev-list</tt>.
+     */
+    private List<ObjectId> revListJGit(Collection<Ref> refs) throws IOException {
+        List<ObjectId> entries = new ArrayList<ObjectId>();
+        RevWalk walk = new RevWalk(jGitDelegate.getRepository());
+        try {
+            for (Ref ref : refs) {
+                if (ref.getObjectId() == null) {
+                    continue;
+                }
+                RevObject object = walk.peel(walk.parseAny(ref.getObjectId()));
+                if (object instanceof RevCommit) {
+                    walk.markStart((RevCommit) object);
+                }
+            }
+            for (RevCommit commit : walk) {
+                entries.add(commit.copy());
+            }
+        } finally {
+            walk.release();
+        }
+        return entries;
+    }
+
     public List<ObjectId> revList(String... extraArgs) throws GitException {
         List<ObjectId> entries = new ArrayList<ObjectId>();
         ArgumentListBuilder args = new ArgumentListBuilder("rev-list");
@@ -1043,13 +1414,33 @@ public class GitAPI implements IGitAPI {
     }
 
     public void fetch(RemoteConfig remoteRepository) throws GitException {
-        // Assume there is only 1 URL / refspec for simplicity
-        fetch(remoteRepository.getURIs().get(0).toPrivateString(),
-            remoteRepository.getFetchRefSpecs().get(0).toString());
+        // Assume there is only 1 URL for simplicity
+        fetch(remoteRepository.getURIs().get(0).toPrivateString(), getFetchRefSpecs(remoteRepository), 0);
+    }
 
+    private static List<String> getFetchRefSpecs(RemoteConfig remoteRepository) {
+        List<String> refSpecs = new ArrayList<String>();
+        for (RefSpec refSpec : remoteRepository.getFetchRefSpecs()) {
+            refSpecs.add(refSpec.toString());
+        }
+        return refSpecs;
     }
 
     public ObjectId mergeBase(ObjectId id1, ObjectId id2) {
+        if (useJGitQueries()) {
+            RevWalk walk = new RevWalk(jGitDelegate.getRepository());
+            try {
+                walk.setRevFilter(RevFilter.MERGE_BASE);
+                walk.markStart(walk.parseCommit(id1));
+                walk.markStart(walk.parseCommit(id2));
+                RevCommit base = walk.next();
+                return base == null ? null : base.copy();
+            } catch (Exception e) {
+                logJGitFallback("merge-base " + id1.name() + " " + id2.name(), e);
+            } finally {
+                walk.release();
+            }
+        }
         try {
             String result;
             try {
@@ -1074,6 +1465,49 @@ public class GitAPI implements IGitAPI {
         return null;
     }
 
+    /**
+     * Loads every candidate into a single {@link RevWalk} and flags each commit that is reached as the parent
+     * of another one. A candidate that ends up flagged is an ancestor of some other candidate, so the whole
+     * check costs one traversal instead of a merge-base per pair of candidates.
+     */
+    public Set<ObjectId> getTipCommits(Collection<ObjectId> commits) throws GitException {
+        if (jGitDelegate == null) {
+            throw new GitException("Repository " + workspace.getRemote() + " is not open");
+        }
+        Set<ObjectId> tips = new HashSet<ObjectId>();
+        List<RevCommit> candidates = new ArrayList<RevCommit>();
+        RevWalk walk = new RevWalk(jGitDelegate.getRepository());
+        try {
+            walk.setRetainBody(false);
+            RevFlag reachable = walk.newFlag("reachable");
+            for (ObjectId id : commits) {
+                try {
+                    RevCommit commit = walk.parseCommit(id);
+                    walk.markStart(commit);
+                    candidates.add(commit);
+                } catch (IOException e) {
+                    // Unknown to this repository, so nothing here can subsume it.
+                    tips.add(id.copy());
+                }
+            }
+            for (RevCommit commit = walk.next(); commit != null; commit = walk.next()) {
+                for (RevCommit parent : commit.getParents()) {
+                    parent.add(reachable);
+                }
+            }
+            for (RevCommit candidate : candidates) {
+                if (!candidate.has(reachable)) {
+                    tips.add(candidate.copy());
+                }
+            }
+        } catch (IOException e) {
+            throw new GitException("Error walking commit graph", e);
+        } finally {
+            walk.release();
+        }
+        return tips;
+    }
+
     public String getAllLogEntries(String branch) {
         return launchCommand("log", "--all", "--pretty=format:'%H#%ct'", branch);
     }
@@ -1100,6 +1534,25 @@ public class GitAPI implements IGitAPI {
     }
 
     public Set<String> getTagNames(String tagPattern) throws GitException {
+        if (useJGitQueries()) {
+            try {
+                Set<String> tags = new HashSet<String>();
+                FileNameMatcher matcher = tagPattern == null ? null : new FileNameMatcher(tagPattern, null);
+                for (String tag : jGitDelegate.getRepository().getTags().keySet()) {
+                    if (matcher != null) {
+                        matcher.reset();
+                        matcher.append(tag);
+                        if (!matcher.isMatch()) {
+                            continue;
+                        }
+                    }
+                    tags.add(tag);
+                }
+                return tags;
+            } catch (Exception e) {
+                logJGitFallback("tag -l " + tagPattern, e);
+            }
+        }
         try {
             ArgumentListBuilder args = new ArgumentListBuilder();
             args.add("tag", "-l", tagPattern);
@@ -1119,6 +1572,14 @@ public class GitAPI implements IGitAPI {
         }
     }
 
+    private boolean useJGitQueries() {
+        return JGIT_QUERIES && jGitDelegate != null;
+    }
+
+    private void logJGitFallback(String query, Exception e) {
+        LOGGER.log(Level.FINE, "JGit could not answer '" + query + "', falling back to git(1)", e);
+    }
+
     private void verifyGitRepository() {
         if (!hasGitRepo() || null == jGitDelegate) {
             throw new GitException(Messages.GitAPI_Repository_InvalidStateMsg());
@@ -1188,4 +1649,20 @@ public class GitAPI implements IGitAPI {
         }
         return result.length()>=40 ? result.substring(0,40) : "";
     }
+
+    public Map<String, ObjectId> getRemoteHeads(String remoteRepoUrl) throws GitException {
+        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+        args.add("-h");
+        args.add(remoteRepoUrl);
+        Map<String, ObjectId> heads = new TreeMap<String, ObjectId>();
+        for (String line : launchCommand(args).split("\n")) {
+            // skip banners and anything else that is not "<sha1>\t<ref>"
+            int tab = line.indexOf('\t');
+            if (tab != 40 || !ObjectId.isId(line.substring(0, 40))) {
+                continue;
+            }
+            heads.put(line.substring(tab + 1).trim(), ObjectId.fromString(line.substring(0, 40)));
+        }
+        return heads;
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Offsets of the commits in a changelog file, so that single entries can be read without
+ * loading the whole file.
+ *
+ * @see GitChangeLogParser
+ */
+class GitChangeLogIndex {
+
+    private static final byte[] COMMIT_PREFIX = {'c', 'o', 'm', 'm', 'i', 't', ' '};
+
+    private final File changelogFile;
+    private final long[] offsets;
+    private final int size;
+    private final long length;
+
+    private GitChangeLogIndex(File changelogFile, long[] offsets, int size, long length) {
+        this.changelogFile = changelogFile;
+        this.offsets = offsets;
+        this.size = size;
+        this.length = length;
+    }
+
+    /**
+     * Scans the changelog file for lines starting with {@code commit }.
+     *
+     * @param changelogFile changelog file.
+     * @return index of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    static GitChangeLogIndex build(File changelogFile) throws IOException {
+        long[] offsets = new long[16];
+        int size = 0;
+        long position = 0;
+        long lineStart = 0;
+        // number of bytes of COMMIT_PREFIX matched at the start of the current line, -1 if it can't match anymore
+        int matched = 0;
+
+        InputStream in = new FileInputStream(changelogFile);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++, position++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        lineStart = position + 1;
+                        matched = 0;
+                    } else if (matched >= 0) {
+                        if (b != COMMIT_PREFIX[matched]) {
+                            matched = -1;
+                        } else if (++matched == COMMIT_PREFIX.length) {
+                            if (size == offsets.length) {
+                                long[] grown = new long[size * 2];
+                                System.arraycopy(offsets, 0, grown, 0, size);
+                                offsets = grown;
+                            }
+                            offsets[size++] = lineStart;
+                            matched = -1;
+                        }
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return new GitChangeLogIndex(changelogFile, offsets, size, position);
+    }
+
+    /**
+     * Returns the number of commits in the changelog.
+     *
+     * @return number of commits.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Reads the lines of a commit, starting with its {@code commit} line.
+     *
+     * @param index position of the commit in the changelog file.
+     * @return lines of the commit.
+     * @throws IOException if the file cannot be read.
+     */
+    List<String> readEntry(int index) throws IOException {
+        long start = offsets[index];
+        long end = index + 1 < size ? offsets[index + 1] : length;
+        byte[] bytes = new byte[(int) (end - start)];
+        RandomAccessFile file = new RandomAccessFile(changelogFile, "r");
+        try {
+            file.seek(start);
+            file.readFully(bytes);
+        } finally {
+            file.close();
+        }
+
+        List<String> lines = new ArrayList<String>();
+        BufferedReader rdr = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes)));
+        String line;
+        while ((line = rdr.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+}
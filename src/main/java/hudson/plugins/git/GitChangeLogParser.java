@@ -41,6 +41,12 @@ import org.xml.sax.SAXException;
  */
 public class GitChangeLogParser extends ChangeLogParser {
 
+    /**
+     * Whether change sets are parsed on demand from an index of the changelog file. Set the {@code eager}
+     * property to parse every change set when the changelog is loaded.
+     */
+    public static boolean LAZY = !Boolean.getBoolean(GitChangeLogParser.class.getName() + ".eager");
+
     private boolean authorOrCommitter;
 
     public GitChangeLogParser(boolean authorOrCommitter) {
@@ -50,6 +56,9 @@ public class GitChangeLogParser extends ChangeLogParser {
 
     public GitChangeSetList parse(AbstractBuild build, File changelogFile)
         throws IOException, SAXException {
+        if (LAZY) {
+            return new GitChangeSetList(build, GitChangeLogIndex.build(changelogFile), authorOrCommitter);
+        }
 
         ArrayList<GitChangeSet> r = new ArrayList<GitChangeSet>();
 
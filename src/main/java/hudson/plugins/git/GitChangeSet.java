@@ -40,8 +40,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
@@ -57,11 +55,8 @@ import hudson.scm.SCM;
 public class GitChangeSet extends ChangeLogSet.Entry {
     private static final Logger LOGGER = Logger.getLogger(GitSCM.class.getName());
 
-    private static final Pattern FILE_LOG_ENTRY = Pattern.compile(
-        "^:[0-9]{6} [0-9]{6} ([0-9a-f]{40}) ([0-9a-f]{40}) ([ACDMRTUX])(?>[0-9]+)?\t(.*)$");
-    private static final Pattern AUTHOR_ENTRY = Pattern.compile("^author (.*) <(.*)> (.*) (.*)$");
-    private static final Pattern COMMITTER_ENTRY = Pattern.compile("^committer (.*) <(.*)> (.*) (.*)$");
-    private static final Pattern RENAME_SPLIT = Pattern.compile("^(.*?)\t(.*)$");
+    private static final int MODE_LENGTH = 6;
+    private static final int HASH_LENGTH = 40;
 
     private static final String NULL_HASH = "0000000000000000000000000000000000000000";
     private String committer;
@@ -86,76 +81,44 @@ public class GitChangeSet extends ChangeLogSet.Entry {
         }
     }
 
+    /**
+     * Parses the raw lines of a commit in a single pass, without regular expressions.
+     */
     private void parseCommit(List<String> lines) {
 
-        String message = "";
+        StringBuilder message = new StringBuilder();
 
         for (String line : lines) {
             if (line.length() > 0) {
                 if (line.startsWith("commit ")) {
-                    this.id = line.split(" ")[1];
+                    this.id = parseToken(line, "commit ".length());
                 } else if (line.startsWith("parent ")) {
-                    this.parentCommit = line.split(" ")[1];
+                    this.parentCommit = parseToken(line, "parent ".length());
                 } else if (line.startsWith("committer ")) {
-                    Matcher committerMatcher = COMMITTER_ENTRY.matcher(line);
-                    if (committerMatcher.matches() && committerMatcher.groupCount() >= 4) {
-                        this.committer = committerMatcher.group(1);
-                        this.committerEmail = committerMatcher.group(2);
-                        this.committerTime = committerMatcher.group(3);
-                        this.committerTz = committerMatcher.group(4);
+                    String[] person = parsePerson(line, "committer ".length());
+                    if (person != null) {
+                        this.committer = person[0];
+                        this.committerEmail = person[1];
+                        this.committerTime = person[2];
+                        this.committerTz = person[3];
                     }
                 } else if (line.startsWith("author ")) {
-                    Matcher authorMatcher = AUTHOR_ENTRY.matcher(line);
-                    if (authorMatcher.matches() && authorMatcher.groupCount() >= 4) {
-                        this.author = authorMatcher.group(1);
-                        this.authorEmail = authorMatcher.group(2);
-                        this.authorTime = authorMatcher.group(3);
-                        this.authorTz = authorMatcher.group(4);
+                    String[] person = parsePerson(line, "author ".length());
+                    if (person != null) {
+                        this.author = person[0];
+                        this.authorEmail = person[1];
+                        this.authorTime = person[2];
+                        this.authorTz = person[3];
                     }
                 } else if (line.startsWith("    ")) {
-                    message += line.substring(4) + "\n";
+                    message.append(line, 4, line.length()).append('\n');
                 } else if (':' == line.charAt(0)) {
-                    Matcher fileMatcher = FILE_LOG_ENTRY.matcher(line);
-                    if (fileMatcher.matches() && fileMatcher.groupCount() >= 4) {
-                        String mode = fileMatcher.group(3);
-                        if (mode.length() == 1) {
-                            String src = null;
-                            String dst = null;
-                            String path = fileMatcher.group(4);
-                            char editMode = mode.charAt(0);
-                            if (editMode == 'M' || editMode == 'A' || editMode == 'D'
-                                || editMode == 'R' || editMode == 'C') {
-                                src = parseHash(fileMatcher.group(1));
-                                dst = parseHash(fileMatcher.group(2));
-                            }
-
-                            // Handle rename as two operations - a delete and an add
-                            if (editMode == 'R') {
-                                Matcher renameSplitMatcher = RENAME_SPLIT.matcher(path);
-                                if (renameSplitMatcher.matches() && renameSplitMatcher.groupCount() >= 2) {
-                                    String oldPath = renameSplitMatcher.group(1);
-                                    String newPath = renameSplitMatcher.group(2);
-                                    this.paths.add(new Path(src, dst, 'D', oldPath, this));
-                                    this.paths.add(new Path(src, dst, 'A', newPath, this));
-                                }
-                            }
-                            // Handle copy as an add
-                            else if (editMode == 'C') {
-                                Matcher copySplitMatcher = RENAME_SPLIT.matcher(path);
-                                if (copySplitMatcher.matches() && copySplitMatcher.groupCount() >= 2) {
-                                    String newPath = copySplitMatcher.group(2);
-                                    this.paths.add(new Path(src, dst, 'A', newPath, this));
-                                }
-                            } else {
-                                this.paths.add(new Path(src, dst, editMode, path, this));
-                            }
-                        }
-                    }
+                    parseFileLogEntry(line);
                 }
             }
         }
 
-        this.comment = message;
+        this.comment = message.toString();
 
         int endOfFirstLine = this.comment.indexOf('\n');
         if (endOfFirstLine == -1) {
@@ -165,6 +128,113 @@ public class GitChangeSet extends ChangeLogSet.Entry {
         }
     }
 
+    /**
+     * Returns the text from {@code start} up to the next space or the end of the line.
+     */
+    private static String parseToken(String line, int start) {
+        int end = line.indexOf(' ', start);
+        return end == -1 ? line.substring(start) : line.substring(start, end);
+    }
+
+    /**
+     * Parses {@code Name <email> time tz}, starting at {@code start}. Name and email are interned, since the
+     * same few people show up in every commit.
+     *
+     * @return name, email, time and time zone, or null if the line is malformed.
+     */
+    private static String[] parsePerson(String line, int start) {
+        int tzStart = line.lastIndexOf(' ');
+        int emailEnd = tzStart < 2 ? -1 : line.lastIndexOf("> ", tzStart - 2);
+        int nameEnd = emailEnd < 2 ? -1 : line.lastIndexOf(" <", emailEnd - 2);
+        if (nameEnd < start) {
+            return null;
+        }
+        return new String[]{
+            line.substring(start, nameEnd).intern(),
+            line.substring(nameEnd + 2, emailEnd).intern(),
+            line.substring(emailEnd + 2, tzStart),
+            line.substring(tzStart + 1)
+        };
+    }
+
+    /**
+     * Parses a {@code git whatchanged --raw} entry:
+     * {@code :<src mode> <dst mode> <src sha1> <dst sha1> <status>[score]\t<path>[\t<path>]}.
+     */
+    private void parseFileLogEntry(String line) {
+        // ':' + mode + ' ' + mode + ' '
+        int pos = 1 + MODE_LENGTH + 1 + MODE_LENGTH + 1;
+        // sha1 + ' ' + sha1 + ' ' + status + '\t'
+        if (line.length() < pos + HASH_LENGTH + 1 + HASH_LENGTH + 1 + 1 + 1
+            || !isDigits(line, 1, MODE_LENGTH) || line.charAt(1 + MODE_LENGTH) != ' '
+            || !isDigits(line, 1 + MODE_LENGTH + 1, MODE_LENGTH) || line.charAt(pos - 1) != ' '
+            || !isHash(line, pos) || line.charAt(pos + HASH_LENGTH) != ' '
+            || !isHash(line, pos + HASH_LENGTH + 1) || line.charAt(pos + 2 * HASH_LENGTH + 1) != ' ') {
+            return;
+        }
+        String srcHash = line.substring(pos, pos + HASH_LENGTH);
+        String dstHash = line.substring(pos + HASH_LENGTH + 1, pos + 2 * HASH_LENGTH + 1);
+        pos += 2 * HASH_LENGTH + 2;
+
+        char editMode = line.charAt(pos++);
+        if ("ACDMRTUX".indexOf(editMode) == -1) {
+            return;
+        }
+        // skip the similarity score of renames and copies
+        while (pos < line.length() && line.charAt(pos) >= '0' && line.charAt(pos) <= '9') {
+            pos++;
+        }
+        if (pos >= line.length() || line.charAt(pos) != '\t') {
+            return;
+        }
+        String path = line.substring(pos + 1);
+
+        String src = null;
+        String dst = null;
+        if (editMode == 'M' || editMode == 'A' || editMode == 'D'
+            || editMode == 'R' || editMode == 'C') {
+            src = parseHash(srcHash);
+            dst = parseHash(dstHash);
+        }
+
+        int tab = path.indexOf('\t');
+        // Handle rename as two operations - a delete and an add
+        if (editMode == 'R') {
+            if (tab != -1) {
+                this.paths.add(new Path(src, dst, 'D', path.substring(0, tab), this));
+                this.paths.add(new Path(src, dst, 'A', path.substring(tab + 1), this));
+            }
+        }
+        // Handle copy as an add
+        else if (editMode == 'C') {
+            if (tab != -1) {
+                this.paths.add(new Path(src, dst, 'A', path.substring(tab + 1), this));
+            }
+        } else {
+            this.paths.add(new Path(src, dst, editMode, path, this));
+        }
+    }
+
+    private static boolean isDigits(String line, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHash(String line, int start) {
+        for (int i = start; i < start + HASH_LENGTH; i++) {
+            char c = line.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private String parseHash(String hash) {
         return NULL_HASH.equals(hash) ? null : hash;
     }
@@ -26,6 +26,9 @@ package hudson.plugins.git;
 
 import hudson.model.AbstractBuild;
 import hudson.scm.ChangeLogSet;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.AbstractList;
 import java.util.Collections;
 import java.util.List;
 
@@ -47,6 +50,14 @@ public class GitChangeSetList extends ChangeLogSet<GitChangeSet> {
         }
     }
 
+    /**
+     * Creates a list whose change sets are parsed from the changelog file when first accessed.
+     */
+    /*package*/ GitChangeSetList(AbstractBuild build, GitChangeLogIndex index, boolean authorOrCommitter) {
+        super(build);
+        this.changeSets = new LazyChangeSets(index, authorOrCommitter);
+    }
+
     public List<GitChangeSet> getLogs() {
         return changeSets;
     }
@@ -55,4 +66,42 @@ public class GitChangeSetList extends ChangeLogSet<GitChangeSet> {
     public String getKind() {
         return "git";
     }
+
+    /**
+     * Change sets of an indexed changelog, newest first. Parsed change sets are softly cached.
+     */
+    private final class LazyChangeSets extends AbstractList<GitChangeSet> {
+        private final GitChangeLogIndex index;
+        private final boolean authorOrCommitter;
+        private final SoftReference<GitChangeSet>[] cache;
+
+        @SuppressWarnings("unchecked")
+        private LazyChangeSets(GitChangeLogIndex index, boolean authorOrCommitter) {
+            this.index = index;
+            this.authorOrCommitter = authorOrCommitter;
+            this.cache = new SoftReference[index.size()];
+        }
+
+        @Override
+        public synchronized GitChangeSet get(int i) {
+            SoftReference<GitChangeSet> ref = cache[i];
+            GitChangeSet changeSet = ref == null ? null : ref.get();
+            if (changeSet == null) {
+                try {
+                    // put new things first
+                    changeSet = new GitChangeSet(index.readEntry(cache.length - 1 - i), authorOrCommitter);
+                } catch (IOException e) {
+                    throw new GitException("Unable to read changelog entry", e);
+                }
+                changeSet.setParent(GitChangeSetList.this);
+                cache[i] = new SoftReference<GitChangeSet>(changeSet);
+            }
+            return changeSet;
+        }
+
+        @Override
+        public int size() {
+            return cache.length;
+        }
+    }
 }
@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.scm.SCM;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * Index of the projects using {@link GitSCM}, by repository host and normalized path, so that
+ * {@link GitStatus#doNotifyCommit(String, String)} only has to look at the projects using the notified repository.
+ * <p/>
+ * The index is built on first use and kept up to date when projects are created, saved or deleted.
+ */
+public final class GitProjectIndex {
+
+    private static final GitProjectIndex INSTANCE = new GitProjectIndex();
+
+    /**
+     * Projects by repository key.
+     */
+    private final Map<String, Set<AbstractProject<?, ?>>> projectsByRepository =
+        new HashMap<String, Set<AbstractProject<?, ?>>>();
+
+    /**
+     * Repository keys of every indexed Git project.
+     */
+    private final Map<AbstractProject<?, ?>, Set<String>> repositoriesByProject =
+        new IdentityHashMap<AbstractProject<?, ?>, Set<String>>();
+
+    private boolean initialized;
+
+    GitProjectIndex() {
+    }
+
+    /**
+     * Returns the index of this Hudson instance.
+     *
+     * @return project index.
+     */
+    public static GitProjectIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the projects with a Git repository that loosely matches the given URI.
+     *
+     * @param uri repository URI.
+     * @return matching projects.
+     * @see GitStatus#looselyMatches(URIish, URIish)
+     */
+    public synchronized List<AbstractProject<?, ?>> getProjects(URIish uri) {
+        ensureInitialized();
+        Set<AbstractProject<?, ?>> projects = projectsByRepository.get(key(uri));
+        return projects == null ? Collections.<AbstractProject<?, ?>>emptyList()
+            : new ArrayList<AbstractProject<?, ?>>(projects);
+    }
+
+    /**
+     * Returns true if there is at least one project using Git.
+     *
+     * @return true if any project uses Git.
+     */
+    public synchronized boolean hasProjects() {
+        ensureInitialized();
+        return !repositoriesByProject.isEmpty();
+    }
+
+    /**
+     * Re-indexes every project. Callers must make sure all projects are visible to them.
+     */
+    public synchronized void rebuild() {
+        projectsByRepository.clear();
+        repositoriesByProject.clear();
+        Hudson hudson = Hudson.getInstance();
+        if (hudson == null) {
+            return;
+        }
+        for (AbstractProject<?, ?> project : hudson.getAllItems(AbstractProject.class)) {
+            index(project);
+        }
+        initialized = true;
+    }
+
+    /**
+     * Re-indexes a project and the projects it contains, such as matrix configurations.
+     *
+     * @param item changed item.
+     */
+    public synchronized void update(Item item) {
+        if (!initialized) {
+            return;
+        }
+        if (item instanceof AbstractProject) {
+            index((AbstractProject<?, ?>) item);
+        }
+        if (item instanceof ItemGroup) {
+            for (Object child : ((ItemGroup<?>) item).getItems()) {
+                if (child instanceof Item) {
+                    update((Item) child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an item and the projects it contains from the index.
+     *
+     * @param item deleted item.
+     */
+    public synchronized void remove(Item item) {
+        if (!initialized) {
+            return;
+        }
+        if (item instanceof AbstractProject) {
+            unindex((AbstractProject<?, ?>) item);
+        }
+        if (item instanceof ItemGroup) {
+            for (Object child : ((ItemGroup<?>) item).getItems()) {
+                if (child instanceof Item) {
+                    remove((Item) child);
+                }
+            }
+        }
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) {
+            rebuild();
+        }
+    }
+
+    private void index(AbstractProject<?, ?> project) {
+        unindex(project);
+        SCM scm = project.getScm();
+        if (!(scm instanceof GitSCM)) {
+            return;
+        }
+        Set<String> keys = new HashSet<String>();
+        for (RemoteConfig repository : ((GitSCM) scm).getRepositories()) {
+            for (URIish uri : repository.getURIs()) {
+                keys.add(key(uri));
+            }
+        }
+        repositoriesByProject.put(project, keys);
+        for (String key : keys) {
+            Set<AbstractProject<?, ?>> projects = projectsByRepository.get(key);
+            if (projects == null) {
+                projects = new HashSet<AbstractProject<?, ?>>();
+                projectsByRepository.put(key, projects);
+            }
+            projects.add(project);
+        }
+    }
+
+    private void unindex(AbstractProject<?, ?> project) {
+        Collection<String> keys = repositoriesByProject.remove(project);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            Set<AbstractProject<?, ?>> projects = projectsByRepository.get(key);
+            if (projects != null) {
+                projects.remove(project);
+                if (projects.isEmpty()) {
+                    projectsByRepository.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the key under which a repository is indexed. URIs that loosely match have the same key.
+     */
+    static String key(URIish uri) {
+        return uri.getHost() + '\0' + (uri.getPath() == null ? "" : GitStatus.normalizePath(uri.getPath()));
+    }
+
+    /**
+     * Keeps the index up to date with created, copied, deleted and reloaded items.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onLoaded() {
+            getInstance().rebuild();
+        }
+
+        @Override
+        public void onCreated(Item item) {
+            getInstance().update(item);
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            getInstance().update(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            getInstance().remove(item);
+        }
+    }
+
+    /**
+     * Keeps the index up to date with reconfigured projects.
+     */
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof AbstractProject) {
+                getInstance().update((AbstractProject<?, ?>) o);
+            }
+        }
+    }
+}
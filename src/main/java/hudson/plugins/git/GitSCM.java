@@ -54,9 +54,16 @@ import hudson.plugins.git.util.Build;
 import hudson.plugins.git.util.BuildChooser;
 import hudson.plugins.git.util.BuildChooserDescriptor;
 import hudson.plugins.git.util.BuildData;
+import hudson.plugins.git.util.BuildDataStore;
+import hudson.plugins.git.util.ChangelogStream;
 import hudson.plugins.git.util.DefaultBuildChooser;
 import hudson.plugins.git.util.GitConstants;
 import hudson.plugins.git.util.GitUtils;
+import hudson.plugins.git.util.ParallelFetcher;
+import hudson.plugins.git.util.PollingBackoff;
+import hudson.plugins.git.util.ReferenceCache;
+import hudson.plugins.git.util.RegionMatcher;
+import hudson.plugins.git.util.RemoteHeadsCache;
 import hudson.remoting.VirtualChannel;
 import hudson.scm.ChangeLogParser;
 import hudson.scm.PollingResult;
@@ -68,6 +75,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -81,7 +89,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import javax.servlet.ServletException;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.ArrayUtils;
@@ -183,6 +190,12 @@ public class GitSCM extends SCM implements Serializable {
     private String excludedRegions;
 
     private String excludedUsers;
+
+    /**
+     * Compiled {@link #includedRegions} and {@link #excludedRegions}, built on first use.
+     */
+    private transient volatile RegionMatcher includedRegionsMatcher;
+    private transient volatile RegionMatcher excludedRegionsMatcher;
     
     private Set<String> excludedCommits = new HashSet<String>();
 
@@ -194,6 +207,42 @@ public class GitSCM extends SCM implements Serializable {
     
     private boolean useCgitClone;
 
+    /**
+     * Number of commits of history cloned, zero for the full history.
+     */
+    private int shallowDepth;
+
+    /**
+     * Whether a shallow clone is deepened until it contains the last built revision, so that the change log
+     * can be recorded.
+     */
+    private boolean deepenToLastBuild;
+
+    /**
+     * Whether clones and fetches borrow objects from the node-local {@link ReferenceCache}.
+     */
+    private boolean useReferenceCache;
+
+    /**
+     * Whether only the refs of the configured branches are fetched instead of the configured refspecs.
+     */
+    private boolean narrowRefSpecs;
+
+    /**
+     * Whether the working tree only contains the {@link #includedRegions} and {@link #sparseCheckoutPaths}.
+     */
+    private boolean sparseCheckout;
+
+    /**
+     * Additional sparse checkout patterns, one per line.
+     */
+    private String sparseCheckoutPaths;
+
+    /**
+     * Whether polls are skipped until the interval learned by {@link PollingBackoff} has elapsed.
+     */
+    private boolean adaptivePolling;
+
     public Collection<SubmoduleConfig> getSubmoduleCfg() {
         return submoduleCfg;
     }
@@ -362,10 +411,7 @@ public class GitSCM extends SCM implements Serializable {
         this.ignoreNotifyCommit = ignoreNotifyCommit;
         
         if (remotePoll && 
-                (branches.size() != 1
-                || branches.get(0).getName().contains("*")
-                || getRepositories().size() != 1
-                || (excludedRegions != null && excludedRegions.length() > 0)
+                ((excludedRegions != null && excludedRegions.length() > 0)
                 || (submoduleCfg.size() != 0)
                 || (excludedUsers != null && excludedUsers.length() > 0))) {
                 LOGGER.log(Level.WARNING, "Cannot poll remotely with current configuration.");
@@ -391,6 +437,98 @@ public class GitSCM extends SCM implements Serializable {
         return useCgitClone;
     }
 
+    public void setShallowDepth(int shallowDepth) {
+        this.shallowDepth = Math.max(shallowDepth, 0);
+    }
+
+    public int getShallowDepth() {
+        return shallowDepth;
+    }
+
+    public void setDeepenToLastBuild(boolean deepenToLastBuild) {
+        this.deepenToLastBuild = deepenToLastBuild;
+    }
+
+    public boolean getDeepenToLastBuild() {
+        return deepenToLastBuild;
+    }
+
+    public void setUseReferenceCache(boolean useReferenceCache) {
+        this.useReferenceCache = useReferenceCache;
+    }
+
+    public boolean getUseReferenceCache() {
+        return useReferenceCache;
+    }
+
+    public void setNarrowRefSpecs(boolean narrowRefSpecs) {
+        this.narrowRefSpecs = narrowRefSpecs;
+    }
+
+    public boolean getNarrowRefSpecs() {
+        return narrowRefSpecs;
+    }
+
+    public void setSparseCheckout(boolean sparseCheckout) {
+        this.sparseCheckout = sparseCheckout;
+    }
+
+    public boolean getSparseCheckout() {
+        return sparseCheckout;
+    }
+
+    public void setSparseCheckoutPaths(String sparseCheckoutPaths) {
+        this.sparseCheckoutPaths = sparseCheckoutPaths;
+    }
+
+    public String getSparseCheckoutPaths() {
+        return sparseCheckoutPaths;
+    }
+
+    public void setAdaptivePolling(boolean adaptivePolling) {
+        this.adaptivePolling = adaptivePolling;
+    }
+
+    public boolean getAdaptivePolling() {
+        return adaptivePolling;
+    }
+
+    /**
+     * Returns the polling interval learned for the given job by adaptive polling.
+     *
+     * @param project job using this SCM.
+     * @return interval in milliseconds.
+     */
+    public long getAdaptivePollingInterval(AbstractProject<?, ?> project) {
+        return PollingBackoff.getInstance().getInterval(project.getFullName());
+    }
+
+    public String[] getSparseCheckoutPathsNormalized() {
+        return StringUtils.isBlank(sparseCheckoutPaths) ? null : sparseCheckoutPaths.trim().split("\\s*[\\r\\n]+");
+    }
+
+    /**
+     * Returns the sparse checkout patterns of the working tree: the {@link #includedRegions} widened to
+     * directories and the {@link #sparseCheckoutPaths}.
+     *
+     * @return patterns, or null if the full tree is checked out.
+     */
+    public List<String> getSparseCheckoutPatterns() {
+        if (!sparseCheckout) {
+            return null;
+        }
+        List<String> patterns = RegionMatcher.toSparseCheckoutPatterns(getIncludedRegionsNormalized());
+        if (patterns == null) {
+            LOGGER.log(Level.FINE, "Included regions {0} cannot be restricted to directories", includedRegions);
+            return null;
+        }
+        String[] paths = getSparseCheckoutPathsNormalized();
+        if (paths != null) {
+            patterns.addAll(Arrays.asList(paths));
+        }
+        return patterns.isEmpty() ? null : patterns;
+    }
+
     public Object readResolve() {
         // Migrate data
 
@@ -605,22 +743,55 @@ public class GitSCM extends SCM implements Serializable {
 
     /**
      * Expand parameters in {@link #remoteRepositories} with the parameter values provided in the given build
-     * and return them.
+     * and return them. If {@link #narrowRefSpecs} is set, the refspecs only cover the configured branches.
      *
      * @return can be empty but never null.
      */
     public List<RemoteConfig> getParamExpandedRepos(AbstractBuild<?, ?> build) {
         List<RemoteConfig> expandedRepos = new ArrayList<RemoteConfig>();
 
+        List<String> branchNames = null;
+        if (narrowRefSpecs) {
+            branchNames = new ArrayList<String>();
+            for (BranchSpec branchSpec : getParamExpandedBranches(build)) {
+                branchNames.add(branchSpec.getName());
+            }
+            if (mergeOptions.doMerge() && mergeOptions.getMergeRemote() != null) {
+                branchNames.add(mergeOptions.getRemoteBranchName());
+            }
+        }
+
         for (RemoteConfig oldRepo : Util.fixNull(remoteRepositories)) {
+            RefSpec refSpec = new RefSpec(getRefSpec(oldRepo, build));
+            List<RefSpec> refSpecs = branchNames != null
+                ? GitUtils.narrowRefSpecs(oldRepo.getName(), refSpec, branchNames)
+                : Collections.singletonList(refSpec);
             expandedRepos.add(newRemoteConfig(oldRepo.getName(),
                 oldRepo.getURIs().get(0).toPrivateString(),
-                new RefSpec(getRefSpec(oldRepo, build)),
+                refSpecs,
                 getRemoteConfigTargetDir(oldRepo)));
         }
 
         return expandedRepos;
     }
+
+    /**
+     * Expand parameters in {@link #branches} with the parameter values provided in the given build.
+     *
+     * @return can be empty but never null.
+     */
+    private List<BranchSpec> getParamExpandedBranches(AbstractBuild<?, ?> build) {
+        List<BranchSpec> branchSpecs = new ArrayList<BranchSpec>();
+        ParametersAction parameters = build.getAction(ParametersAction.class);
+        for (BranchSpec branchSpec : getBranches()) {
+            String name = branchSpec.getName();
+            if (parameters != null) {
+                name = parameters.substitute(build, name);
+            }
+            branchSpecs.add(new BranchSpec(name));
+        }
+        return branchSpecs;
+    }
     
     public boolean requiresWorkspaceForPolling() {
         return !remotePoll && isPollSlaves();
@@ -662,7 +833,13 @@ public class GitSCM extends SCM implements Serializable {
         // since the last fetch of the super project.  (This is currently done
         // by calling git.setupSubmoduleUrls(...). )
         String refUrl = parentGit.getSubmoduleUrl(name);
-        return newRemoteConfig(name, refUrl, orig.getFetchRefSpecs().get(0), StringUtils.EMPTY);
+        RefSpec refSpec = orig.getFetchRefSpecs().get(0);
+        RemoteConfig configured = getRepositoryByName(orig.getName());
+        if (narrowRefSpecs && configured != null) {
+            // the narrowed refspecs name branches of the parent repository
+            refSpec = configured.getFetchRefSpecs().get(0);
+        }
+        return newRemoteConfig(name, refUrl, refSpec, StringUtils.EMPTY);
     }
 
     /**
@@ -778,6 +955,7 @@ public class GitSCM extends SCM implements Serializable {
 
         boolean result = true;
         boolean hasChanges = false;
+        boolean changelogStarted = false;
         for (Map.Entry<String, List<RemoteConfig>> entry : repoMap.entrySet()) {
             FilePath workingDirectory = workingDirectory(workspace);
 
@@ -806,23 +984,55 @@ public class GitSCM extends SCM implements Serializable {
             //TODO find how to set git commit for each repository
             environment.put(GIT_COMMIT, revToBuild.getSha1String());
 
-            if (mergeOptions.doMerge() && !revToBuild.containsBranchName(mergeOptions.getRemoteBranchName())) {
-                buildConfig = getMergedBuildConfig(listener, workingDirectory, buildNumber, gitExe, buildData,
-                    environment, paramLocalBranch, revToBuild, internalTagName, internalTagComment);
-                result = result && changeLogResult(buildConfig.getChangeLog(), changelogFile);
-                continue;
+            ChangelogStream changelog = null;
+            if (STREAM_CHANGELOG) {
+                // Every repository appends to the same changelog file.
+                changelog = ChangelogStream.create(changelogFile, changelogStarted, workingDirectory.isRemote());
+                changelogStarted = true;
             }
 
-            // No merge
-            buildConfig = getBuildConfig(listener, workingDirectory, buildNumber, gitExe, buildData, environment,
-                paramLocalBranch, repos, revToBuild, internalTagName, internalTagComment);
-            result = result && changeLogResult(buildConfig.getChangeLog(), changelogFile);
+            boolean configured = false;
+            try {
+                if (mergeOptions.doMerge() && !revToBuild.containsBranchName(mergeOptions.getRemoteBranchName())) {
+                    buildConfig = getMergedBuildConfig(listener, workingDirectory, buildNumber, gitExe, buildData,
+                        environment, paramLocalBranch, repos, revToBuild, internalTagName, internalTagComment,
+                        changelog);
+                } else {
+                    // No merge
+                    buildConfig = getBuildConfig(listener, workingDirectory, buildNumber, gitExe, buildData,
+                        environment, paramLocalBranch, repos, revToBuild, internalTagName, internalTagComment,
+                        changelog);
+                }
+                configured = true;
+            } finally {
+                if (changelog != null && configured) {
+                    changelog.await();
+                } else if (changelog != null) {
+                    // the node may never have closed the stream
+                    changelog.abort();
+                }
+            }
+            result = result && changeLogResult(buildConfig.getChangeLog(), changelogFile, changelog != null);
         }
         if (null != buildConfig) {
-            build.addAction(buildConfig.getBuildData());
+            BuildData builtData = buildConfig.getBuildData();
+            BuildDataStore store = BuildDataStore.forJob(build.getParent());
+            try {
+                builtData.store(store, build.getNumber());
+            } catch (IOException e) {
+                // keep all builds by branch name in build.xml instead
+                e.printStackTrace(listener.error("Could not record the built branches"));
+            }
+            build.addAction(builtData);
+            try {
+                store.setLatestBuildNumber(build.getNumber());
+            } catch (IOException e) {
+                // getBuildData walks back through the builds instead
+                LOGGER.log(Level.WARNING, "Could not record the latest build of " + build.getParent(), e);
+            }
         }
         if (!hasChanges) {
-           return changeLogResult(null, changelogFile);
+           return changeLogResult(null, changelogFile, false);
         }
         return result;
     }
@@ -841,6 +1051,7 @@ public class GitSCM extends SCM implements Serializable {
      * @param revToBuild revToBuild.
      * @param internalTagName internalTagName
      * @param internalTagComment internalTagComment.
+     * @param changelog stream to write the change log to, or null to return it in the build config.
      * @return buildConfig with change log and build data.
      * @throws IOException          IOException.
      * @throws InterruptedException InterruptedException.
@@ -851,7 +1062,7 @@ public class GitSCM extends SCM implements Serializable {
                                        final EnvVars environment,
                                        final String paramLocalBranch, final List<RemoteConfig> paramRepos,
                                        final Revision revToBuild, final String internalTagName,
-                                       final String internalTagComment)
+                                       final String internalTagComment, final ChangelogStream changelog)
         throws IOException, InterruptedException {
         return workingDirectory.act(new FileCallable<BuildConfig>() {
             private static final long serialVersionUID = 1L;
@@ -870,6 +1081,7 @@ public class GitSCM extends SCM implements Serializable {
                         git.clean();
                     }
 
+                    git.setSparseCheckout(getSparseCheckoutPatterns());
                     git.checkoutBranch(paramLocalBranch, revToBuild.getSha1().name());
 
                     if (git.hasGitModules()) {
@@ -906,11 +1118,14 @@ public class GitSCM extends SCM implements Serializable {
 
                     createInternalTag(git, internalTagName, internalTagComment);
 
-                    changeLog = computeChangeLog(git, revToBuild, listener, buildData);
+                    changeLog = recordChangeLog(git, revToBuild, listener, buildData, paramRepos, changelog);
 
                     buildData.saveBuild(new Build(revToBuild, buildNumber, null));
                 } finally {
                     git.close();
+                    if (changelog != null) {
+                        changelog.closeIfUnused();
+                    }
                 }
 
                 // Fetch the diffs into the changelog file
@@ -932,6 +1147,7 @@ public class GitSCM extends SCM implements Serializable {
      * @param revToBuild revToBuild.
      * @param internalTagName internalTagName
      * @param internalTagComment internalTagComment.
+     * @param changelog stream to write the change log to, or null to return it in the build config.
      * @return buildConfig with change log and build data.
      * @throws IOException          IOException.
      * @throws InterruptedException InterruptedException.
@@ -940,8 +1156,10 @@ public class GitSCM extends SCM implements Serializable {
                                              FilePath workingDirectory,
                                              final int buildNumber, final String gitExe, final BuildData buildData,
                                              final EnvVars environment,
-                                             final String paramLocalBranch, final Revision revToBuild,
-                                             final String internalTagName, final String internalTagComment)
+                                             final String paramLocalBranch, final List<RemoteConfig> paramRepos,
+                                             final Revision revToBuild,
+                                             final String internalTagName, final String internalTagComment,
+                                             final ChangelogStream changelog)
         throws IOException, InterruptedException {
         return workingDirectory.act(new FileCallable<BuildConfig>() {
             private static final long serialVersionUID = 1L;
@@ -963,6 +1181,7 @@ public class GitSCM extends SCM implements Serializable {
                     // checkout origin/blah
                     ObjectId target = git.revParse(mergeOptions.getRemoteBranchName());
 
+                    git.setSparseCheckout(getSparseCheckoutPatterns());
                     git.checkoutBranch(paramLocalBranch, target.name());
 
                     try {
@@ -994,12 +1213,13 @@ public class GitSCM extends SCM implements Serializable {
 
                     createInternalTag(git, internalTagName, internalTagComment);
 
-                    changeLog = computeChangeLog(git, revToBuild, listener, buildData);
+                    changeLog = recordChangeLog(git, revToBuild, listener, buildData, paramRepos, changelog);
 
                     Build build = new Build(revToBuild, buildNumber, null);
-                    buildData.saveBuild(build);
                     GitUtils gu = new GitUtils(listener, git);
+                    // saved builds are shared with the clones of the build data
                     build.mergeRevision = gu.getRevisionForSHA1(target);
+                    buildData.saveBuild(build);
                     if (getClean()) {
                         listener.getLogger().println("Cleaning workspace");
                         git.clean();
@@ -1009,6 +1229,9 @@ public class GitSCM extends SCM implements Serializable {
                     }
                 } finally {
                     git.close();
+                    if (changelog != null) {
+                        changelog.closeIfUnused();
+                    }
                 }
 
                 // Fetch the diffs into the changelog file
@@ -1055,13 +1278,8 @@ public class GitSCM extends SCM implements Serializable {
 
                         listener.getLogger().println("Fetching changes from the remote Git repository");
 
-                        boolean fetched = false;
-
-                        for (RemoteConfig remoteRepository : paramRepos) {
-                            if (fetchFrom(git, listener, remoteRepository)) {
-                                fetched = true;
-                            }
-                        }
+                        boolean fetched = fetchFromAll(
+                            fetchesOf(gitExe, ws, environment, paramRepos), listener);
 
                         if (!fetched) {
                             listener.error("Could not fetch from any repository");
@@ -1076,11 +1294,7 @@ public class GitSCM extends SCM implements Serializable {
                         boolean successfullyCloned = false;
                         for (RemoteConfig rc : paramRepos) {
                             try {
-                                if (useCgitClone) {
-                                    git.clone_cgit(rc);
-                                } else {
-                                    git.clone(rc);
-                                }
+                                cloneFrom(git, rc, gitExe, environment, listener);
                                 successfullyCloned = true;
                                 break;
                             } catch (GitException ex) {
@@ -1094,19 +1308,9 @@ public class GitSCM extends SCM implements Serializable {
                             throw new GitException("Could not clone repository");
                         }
 
-                        boolean fetched = false;
                         // Also do a fetch
-                        for (RemoteConfig remoteRepository : paramRepos) {
-                            try {
-                                git.fetch(remoteRepository);
-                                fetched = true;
-                            } catch (Exception ex) {
-                                 ex.printStackTrace(listener.error(
-                                    "Problem fetching from " + remoteRepository.getName()
-                                        + " / " + remoteRepository.getName()
-                                        + " - could be unavailable. Continuing anyway"));
-                            }
-                        }
+                        boolean fetched = fetchFromAll(
+                            fetchesOf(gitExe, ws, environment, paramRepos), listener);
 
                         if (!fetched) {
                             throw new GitException("Could not fetch from any repository");
@@ -1339,6 +1543,20 @@ public class GitSCM extends SCM implements Serializable {
             );
             
             gitSCM.setUseCgitClone(req.getParameter("git.useCgitClone") != null);
+            String shallowDepth = Util.fixEmptyAndTrim(req.getParameter("git.shallowDepth"));
+            if (shallowDepth != null) {
+                try {
+                    gitSCM.setShallowDepth(Integer.parseInt(shallowDepth));
+                } catch (NumberFormatException e) {
+                    throw new FormException("Shallow clone depth must be a number", e, "git.shallowDepth");
+                }
+            }
+            gitSCM.setDeepenToLastBuild(req.getParameter("git.deepenToLastBuild") != null);
+            gitSCM.setUseReferenceCache(req.getParameter("git.useReferenceCache") != null);
+            gitSCM.setNarrowRefSpecs(req.getParameter("git.narrowRefSpecs") != null);
+            gitSCM.setSparseCheckout(req.getParameter("git.sparseCheckout") != null);
+            gitSCM.setSparseCheckoutPaths(req.getParameter("git.sparseCheckoutPaths"));
+            gitSCM.setAdaptivePolling(req.getParameter("git.adaptivePolling") != null);
                     
             return gitSCM;
         }
@@ -1509,6 +1727,9 @@ public class GitSCM extends SCM implements Serializable {
     /**
      * Look back as far as needed to find a valid BuildData.  BuildData
      * may not be recorded if an exception occurs in the plugin logic.
+     * Starts from the latest build that recorded its BuildData in the
+     * {@link BuildDataStore} of the job when there is one, so that the
+     * builds in between are not loaded.
      *
      * @param build build.
      * @param clone is clone.
@@ -1516,6 +1737,12 @@ public class GitSCM extends SCM implements Serializable {
      */
     public BuildData getBuildData(Run build, boolean clone) {
         BuildData buildData = null;
+        if (build != null) {
+            Run latest = getLatestBuildWithData(build);
+            if (latest != null) {
+                build = latest;
+            }
+        }
         while (build != null) {
             buildData = build.getAction(BuildData.class);
             if (buildData != null) {
@@ -1527,6 +1754,7 @@ public class GitSCM extends SCM implements Serializable {
         if (buildData == null) {
             return clone ? new BuildData() : null;
         }
+        buildData.attach(BuildDataStore.forJob(build.getParent()));
 
         if (clone) {
             return buildData.clone();
@@ -1535,6 +1763,26 @@ public class GitSCM extends SCM implements Serializable {
         }
     }
 
+    /**
+     * Returns the latest build up to the given one that recorded its BuildData, as remembered by the
+     * {@link BuildDataStore} of the job.
+     *
+     * @param build build.
+     * @return latest build with BuildData, or null if unknown.
+     */
+    private static Run getLatestBuildWithData(Run build) {
+        int latestBuildNumber = BuildDataStore.forJob(build.getParent()).getLatestBuildNumber();
+        if (latestBuildNumber <= 0 || latestBuildNumber > build.getNumber()) {
+            // unknown, or recorded by a build that is newer than the given one
+            return null;
+        }
+        if (latestBuildNumber == build.getNumber()) {
+            return build;
+        }
+        Run latest = build.getParent().getBuildByNumber(latestBuildNumber);
+        return latest != null && latest.getAction(BuildData.class) != null ? latest : null;
+    }
+
     public String getLocalBranch() {
         return Util.fixEmpty(localBranch);
     }
@@ -1581,11 +1829,176 @@ public class GitSCM extends SCM implements Serializable {
         return item == null ? null : Hudson.getInstance().getWorkspaceFor(item);
     }
 
+    /**
+     * Polls without a workspace: lists the heads of every repository once and compares those matching the
+     * configured branches with the builds recorded in the build data.
+     *
+     * @param git git used to list the remote heads.
+     * @param lastBuild the last build of the project.
+     * @param buildData build data of the last build.
+     * @param listener listener.
+     * @return {@link PollingResult#BUILD_NOW} if a matching head has not been built yet.
+     */
+    private PollingResult compareRemoteHeads(IGitAPI git, AbstractBuild<?, ?> lastBuild, BuildData buildData,
+                                             TaskListener listener) throws IOException {
+        List<BranchSpec> branchSpecs = getParamExpandedBranches(lastBuild);
+
+        for (RemoteConfig remoteRepository : getParamExpandedRepos(lastBuild)) {
+            String gitRepo = remoteRepository.getURIs().get(0).toString();
+            Map<String, ObjectId> heads = RemoteHeadsCache.getInstance().getHeads(git, gitRepo);
+            if (hasUnbuiltHead(remoteRepository, heads, branchSpecs, buildData, listener)) {
+                return PollingResult.BUILD_NOW;
+            }
+        }
+        return PollingResult.NO_CHANGES;
+    }
+
+    /**
+     * Tells whether a branch of the given remote repository that the job builds has a head which was not built.
+     *
+     * @param remoteRepository remote repository.
+     * @param heads head commits of the remote repository keyed by full ref name.
+     * @param branchSpecs branches the job builds.
+     * @param buildData build data of the last build.
+     * @param listener listener.
+     * @return true if a build is needed.
+     */
+    private boolean hasUnbuiltHead(RemoteConfig remoteRepository, Map<String, ObjectId> heads,
+                                   List<BranchSpec> branchSpecs, BuildData buildData, TaskListener listener) {
+        for (Map.Entry<String, ObjectId> head : heads.entrySet()) {
+            String branch = remoteRepository.getName() + "/" + head.getKey().substring(Constants.R_HEADS.length());
+            if (!matchesAny(branchSpecs, branch)) {
+                continue;
+            }
+            ObjectId sha1 = head.getValue();
+            Build lastBuildOfBranch = buildData.getLastBuildOfBranch(branch);
+            if (lastBuildOfBranch != null && sha1.equals(lastBuildOfBranch.getSHA1())) {
+                continue;
+            }
+            if (buildData.hasBeenBuilt(sha1)) {
+                continue;
+            }
+            if (getExcludedCommits().contains(sha1.name())) {
+                listener.getLogger().println("Ignored commit " + sha1.name() + " on " + branch
+                    + ": This commit has been explicitly excluded from triggering builds.");
+                continue;
+            }
+            listener.getLogger().println("[poll] Head revision of " + branch + ": " + sha1.name());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the remote repositories that polling has to fetch into a workspace. With the reference cache, the
+     * branches of each remote are first read from its node-local mirror, which jobs polling the same repository
+     * update only once per polling cycle; a remote is then fetched only if one of the branches of the job has a
+     * head that was not built.
+     *
+     * @param gitExe git executable.
+     * @param environment environment.
+     * @param remoteRepositories remote repositories of the workspace.
+     * @param branchSpecs branches the job builds.
+     * @param buildData build data of the last build.
+     * @param notifications number of the last notification of each remote repository URL on the master.
+     * @param listener listener.
+     * @return remote repositories to fetch.
+     */
+    private List<RemoteConfig> getRemotesToPoll(String gitExe, EnvVars environment,
+                                                List<RemoteConfig> remoteRepositories, List<BranchSpec> branchSpecs,
+                                                BuildData buildData, Map<String, Long> notifications,
+                                                TaskListener listener) {
+        if (!useReferenceCache) {
+            return remoteRepositories;
+        }
+        List<RemoteConfig> toPoll = new ArrayList<RemoteConfig>();
+        for (RemoteConfig remoteRepository : remoteRepositories) {
+            if (!fetchesBranchesOnly(remoteRepository)) {
+                // the mirror only has the branches and tags
+                toPoll.add(remoteRepository);
+                continue;
+            }
+            String url = remoteRepository.getURIs().get(0).toPrivateString();
+            Map<String, ObjectId> heads;
+            try {
+                Long notification = notifications.get(url);
+                heads = ReferenceCache.getInstance().getHeads(gitExe, url, listener, environment,
+                    notification == null ? 0 : notification);
+            } catch (GitException e) {
+                e.printStackTrace(listener.error("Could not poll the reference repository of " + url));
+                toPoll.add(remoteRepository);
+                continue;
+            }
+            if (hasUnbuiltHead(remoteRepository, heads, branchSpecs, buildData, listener)) {
+                toPoll.add(remoteRepository);
+            } else {
+                listener.getLogger().println("[poll] No new revisions of " + remoteRepository.getName()
+                    + " in the reference repository");
+            }
+        }
+        return toPoll;
+    }
+
+    /**
+     * Tells whether every refspec of a remote repository maps its branches to remote branches of the same name.
+     *
+     * @param remoteRepository remote repository.
+     * @return true if the refspecs fetch branches only.
+     */
+    private static boolean fetchesBranchesOnly(RemoteConfig remoteRepository) {
+        String trackingRefs = Constants.R_REMOTES + remoteRepository.getName() + "/";
+        for (RefSpec refSpec : remoteRepository.getFetchRefSpecs()) {
+            String source = refSpec.getSource();
+            if (source == null || !source.startsWith(Constants.R_HEADS)
+                || !(trackingRefs + source.substring(Constants.R_HEADS.length())).equals(refSpec.getDestination())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesAny(List<BranchSpec> branchSpecs, String branch) {
+        for (BranchSpec branchSpec : branchSpecs) {
+            if (branchSpec.matches(branch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     protected PollingResult compareRemoteRevisionWith(AbstractProject<?, ?> project, Launcher launcher,
                                                       FilePath workspace, final TaskListener listener,
                                                       SCMRevisionState baseline)
         throws IOException, InterruptedException {
+        if (!adaptivePolling) {
+            return pollRemoteRevisions(project, launcher, workspace, listener);
+        }
+        PollingBackoff backoff = PollingBackoff.getInstance();
+        String job = project.getFullName();
+        List<URIish> uris = new ArrayList<URIish>();
+        StringBuilder signature = new StringBuilder();
+        for (RemoteConfig remoteRepository : getRepositories()) {
+            uris.addAll(remoteRepository.getURIs());
+            signature.append(remoteRepository.getURIs()).append(' ');
+        }
+        for (BranchSpec branchSpec : getBranches()) {
+            signature.append(branchSpec.getName()).append(' ');
+        }
+        if (!backoff.isDue(job, signature.toString(), System.currentTimeMillis())) {
+            listener.getLogger().println("[poll] Skipped, the repositories were polled less than "
+                + Util.getTimeSpanString(backoff.getInterval(job)) + " ago");
+            return PollingResult.NO_CHANGES;
+        }
+        PollingResult result = pollRemoteRevisions(project, launcher, workspace, listener);
+        backoff.polled(job, signature.toString(), uris, result.hasChanges(), System.currentTimeMillis());
+        listener.getLogger().println("[poll] Adaptive polling interval: "
+            + Util.getTimeSpanString(backoff.getInterval(job)));
+        return result;
+    }
+
+    private PollingResult pollRemoteRevisions(AbstractProject<?, ?> project, Launcher launcher, FilePath workspace,
+                                              final TaskListener listener) throws IOException, InterruptedException {
         // Poll for changes. Are there any unbuilt revisions that Hudson ought to build ?
 
         listener.getLogger().println("Using strategy: " + buildChooser.getDisplayName());
@@ -1608,7 +2021,7 @@ public class GitSCM extends SCM implements Serializable {
 
         final String singleBranch = GitUtils.getSingleBranch(lastBuild, getRepositories(), getBranches());
         
-        if (singleBranch != null && this.remotePoll) {
+        if (this.remotePoll) {
             String gitExe = "";
             GitTool[] installations = ((hudson.plugins.git.GitTool.DescriptorImpl)Hudson.getInstance().getDescriptorByType(GitTool.DescriptorImpl.class)).getInstallations();
             for(GitTool i : installations) {
@@ -1621,23 +2034,7 @@ public class GitSCM extends SCM implements Serializable {
             IGitAPI git = new GitAPI(gitExe, workspace, listener, environment);
             
             try {
-                String gitRepo = getParamExpandedRepos(lastBuild).get(0).getURIs().get(0).toString();
-                String headRevision = git.getHeadRev(gitRepo, getBranches().get(0).getName());
-                String lastBuildRevision = buildData.lastBuild.getRevision().getSha1String();
-
-                listener.getLogger().println("[poll] Head revision: " + headRevision);
-
-                if (lastBuildRevision.equals(headRevision)) {
-                    return PollingResult.NO_CHANGES;
-                } else if (getExcludedCommits().contains(headRevision)) {
-                    listener.getLogger().println("Ignored commit " + headRevision + ": This commit has been explicitly excluded from triggering builds.");
-                    for (String commit : getExcludedCommits()) {
-                        listener.getLogger().println("[poll] Excluded commit: " + commit);
-                    }
-                    return PollingResult.NO_CHANGES;
-                } else {
-                    return PollingResult.BUILD_NOW;
-                }
+                return compareRemoteHeads(git, lastBuild, buildData, listener);
             } finally {
                 git.close();
             }
@@ -1683,6 +2080,15 @@ public class GitSCM extends SCM implements Serializable {
 
         final EnvVars environment = GitUtils.getPollEnvironment(project, workspace, launcher, listener, isPollSlaves());
         final List<RemoteConfig> paramRepos = getParamExpandedRepos(lastBuild);
+        final List<BranchSpec> branchSpecs = getParamExpandedBranches(lastBuild);
+        // pushes are notified to the master, while the mirrors may be on the node
+        final Map<String, Long> notifications = new HashMap<String, Long>();
+        if (useReferenceCache) {
+            for (RemoteConfig remoteRepository : paramRepos) {
+                String url = remoteRepository.getURIs().get(0).toPrivateString();
+                notifications.put(url, ReferenceCache.getInstance().getNotification(url));
+            }
+        }
         //final String singleBranch = GitUtils.getSingleBranch(lastBuild, getRepositories(), getBranches());
 
         boolean pollChangesResult = workingDirectory.act(new FileCallable<Boolean>() {
@@ -1692,7 +2098,9 @@ public class GitSCM extends SCM implements Serializable {
 
                 Map<String, List<RemoteConfig>> repoMap = getRemoteConfigMap(paramRepos);
 
-                List<Revision> candidates = new ArrayList<Revision>();
+                // Fetch into every existing repository at once, then look for candidates in each of them
+                List<FilePath> fetchedWorkspaces = new ArrayList<FilePath>();
+                List<ParallelFetcher.Fetch> fetches = new ArrayList<ParallelFetcher.Fetch>();
                 for (Map.Entry<String, List<RemoteConfig>> entry : repoMap.entrySet()) {
                     FilePath workspace = new FilePath(localWorkspace);
                     if (StringUtils.isNotEmpty(entry.getKey()) && !entry.getKey().equals(".")) {
@@ -1705,12 +2113,7 @@ public class GitSCM extends SCM implements Serializable {
 							if (!isPollSlaves()) {
 								// Need to have an initial repo
 								for (RemoteConfig remoteRepository : paramRepos) {
-                                                                    if (useCgitClone) {
-                                                                        git.clone_cgit(remoteRepository);
-                                                                    } else {
-                                                                        git.clone(remoteRepository);
-
-                                                                    }
+                                                                    cloneFrom(git, remoteRepository, gitExe, environment, listener);
 								}
 							} else {
 								listener.getLogger().println("No Git repository yet, an initial checkout is required");
@@ -1718,21 +2121,30 @@ public class GitSCM extends SCM implements Serializable {
 							}
 						} else {
 							// Repo is there - do a fetch
-							listener.getLogger().println("Fetching changes from the remote Git repositories");
-
-							for (RemoteConfig remoteRepository : entry.getValue()) {
-								fetchFrom(git, listener, remoteRepository);
+							List<RemoteConfig> remotesToPoll = getRemotesToPoll(gitExe, environment,
+								entry.getValue(), branchSpecs, buildData, notifications, listener);
+							if (!remotesToPoll.isEmpty()) {
+								fetchedWorkspaces.add(workspace);
+								fetches.addAll(fetchesOf(gitExe, workspace, environment, remotesToPoll));
 							}
+						}
+                    } finally {
+                        git.close();
+                    }
+                }
 
-							Collection<Revision> origCanditates = buildChooser.getCandidateRevisions(true, singleBranch, git, listener, buildData);
+                if (!fetches.isEmpty()) {
+                    listener.getLogger().println("Fetching changes from the remote Git repositories");
+                    ParallelFetcher.fetchAll(fetches, listener);
+                }
 
-							for (Revision c : origCanditates) {
-								if (!isRevExcluded(git, c, listener)) {
-									candidates.add(c);
-								}
-							}
+                List<Revision> candidates = new ArrayList<Revision>();
+                for (FilePath workspace : fetchedWorkspaces) {
+                    IGitAPI git = new GitAPI(gitExe, workspace, listener, environment);
+                    try {
+                        Collection<Revision> origCanditates = buildChooser.getCandidateRevisions(true, singleBranch, git, listener, buildData);
 
-						}
+                        candidates.addAll(filterExcludedRevisions(git, origCanditates, listener));
                     } finally {
                         git.close();
                     }
@@ -1745,11 +2157,20 @@ public class GitSCM extends SCM implements Serializable {
     }
 
     private RemoteConfig newRemoteConfig(String name, String refUrl, RefSpec refSpec, String relativeTargetDir) {
+        return newRemoteConfig(name, refUrl, Collections.singletonList(refSpec), relativeTargetDir);
+    }
+
+    private RemoteConfig newRemoteConfig(String name, String refUrl, List<RefSpec> refSpecs,
+                                         String relativeTargetDir) {
         try {
             Config repoConfig = new Config();
             // Make up a repo config from the request parameters
             repoConfig.setString(GitRepository.REMOTE_SECTION, name, "url", refUrl);
-            repoConfig.setString(GitRepository.REMOTE_SECTION, name, "fetch", refSpec.toString());
+            List<String> fetch = new ArrayList<String>();
+            for (RefSpec refSpec : refSpecs) {
+                fetch.add(refSpec.toString());
+            }
+            repoConfig.setStringList(GitRepository.REMOTE_SECTION, name, "fetch", fetch);
             repoConfig.setString(GitRepository.REMOTE_SECTION, name, GitRepository.TARGET_DIR_KEY, relativeTargetDir);
             return GitRepository.getAllGitRepositories(repoConfig).get(0);
         } catch (Exception ex) {
@@ -1757,9 +2178,12 @@ public class GitSCM extends SCM implements Serializable {
         }
     }
 
-    private boolean changeLogResult(String changeLog, File changelogFile) throws IOException {
+    private boolean changeLogResult(String changeLog, File changelogFile, boolean streamed) throws IOException {
         if (changeLog == null) {
             return false;
+        } else if (streamed) {
+            // Already written to the file by the node
+            return true;
         } else {
             changelogFile.delete();
 
@@ -1771,29 +2195,22 @@ public class GitSCM extends SCM implements Serializable {
         }
     }
 
-    private Pattern[] getIncludedRegionsPatterns() {
-        String[] included = getIncludedRegionsNormalized();
-        return getRegionsPatterns(included);
-    }
-
-    private Pattern[] getExcludedRegionsPatterns() {
-        String[] excluded = getExcludedRegionsNormalized();
-        return getRegionsPatterns(excluded);
+    private RegionMatcher getIncludedRegionsMatcher() {
+        RegionMatcher matcher = includedRegionsMatcher;
+        if (matcher == null) {
+            matcher = RegionMatcher.compile(getIncludedRegionsNormalized());
+            includedRegionsMatcher = matcher;
+        }
+        return matcher;
     }
 
-    private Pattern[] getRegionsPatterns(String[] regions) {
-        if (regions != null) {
-            Pattern[] patterns = new Pattern[regions.length];
-
-            int i = 0;
-            for (String region : regions) {
-                patterns[i++] = Pattern.compile(region);
-            }
-
-            return patterns;
+    private RegionMatcher getExcludedRegionsMatcher() {
+        RegionMatcher matcher = excludedRegionsMatcher;
+        if (matcher == null) {
+            matcher = RegionMatcher.compile(getExcludedRegionsNormalized());
+            excludedRegionsMatcher = matcher;
         }
-
-        return new Pattern[0];
+        return matcher;
     }
 
     private String getRefSpec(RemoteConfig repo, AbstractBuild<?, ?> build) {
@@ -1825,7 +2242,11 @@ public class GitSCM extends SCM implements Serializable {
                               TaskListener listener,
                               RemoteConfig remoteRepository) {
         try {
-            git.fetch(remoteRepository);
+            try {
+                git.fetch(remoteRepository);
+            } catch (GitException e) {
+                git.fetch(widenRefSpecs(git, remoteRepository, e, listener));
+            }
             return true;
         } catch (GitException ex) {
             ex.printStackTrace(listener.error(
@@ -1836,6 +2257,162 @@ public class GitSCM extends SCM implements Serializable {
         return false;
     }
 
+    /**
+     * Returns the given remote repository with all its heads if a fetch failed because {@link #narrowRefSpecs}
+     * narrowed it to a name that is not a head of the remote, like a tag. The heads of the remote are only listed
+     * once a fetch failed, so that fetches of existing branches never list them.
+     *
+     * @param git git used to list the remote heads.
+     * @param remoteRepository remote repository with refspecs from {@link #getParamExpandedRepos(AbstractBuild)}.
+     * @param failure failure of the fetch.
+     * @param listener listener.
+     * @return remote repository to fetch from instead.
+     * @throws GitException the given failure if it was not caused by a narrowed refspec.
+     */
+    private RemoteConfig widenRefSpecs(IGitAPI git, RemoteConfig remoteRepository, GitException failure,
+                                       TaskListener listener) throws GitException {
+        List<RefSpec> refSpecs = remoteRepository.getFetchRefSpecs();
+        // only literal refspecs can name a missing head
+        if (!narrowRefSpecs || GitUtils.isNarrowedToHeads(refSpecs, Collections.<String>emptySet())) {
+            throw failure;
+        }
+        String url = remoteRepository.getURIs().get(0).toPrivateString();
+        boolean narrowedToHeads;
+        try {
+            narrowedToHeads = GitUtils.isNarrowedToHeads(refSpecs, git.getRemoteHeads(url).keySet());
+        } catch (GitException e) {
+            // the remote cannot be reached, which the failure already tells
+            throw failure;
+        }
+        if (narrowedToHeads) {
+            throw failure;
+        }
+        String name = remoteRepository.getName();
+        RefSpec refSpec = new RefSpec((refSpecs.get(0).isForceUpdate() ? "+" : "") + Constants.R_HEADS + "*:"
+            + Constants.R_REMOTES + name + "/*");
+        listener.getLogger().println("Not every configured branch is a branch of " + name + ", fetching " + refSpec);
+        return newRemoteConfig(name, url, refSpec, getRemoteConfigTargetDir(remoteRepository));
+    }
+
+    /**
+     * Clones a remote repository into the workspace of the given git, shallow, through the reference cache or
+     * with command line git as configured.
+     *
+     * @param git git of the workspace.
+     * @param remoteRepository remote repository.
+     * @param gitExe git executable.
+     * @param environment environment.
+     * @param listener listener.
+     */
+    private void cloneFrom(IGitAPI git, RemoteConfig remoteRepository, String gitExe, EnvVars environment,
+                           TaskListener listener) {
+        File mirror = null;
+        if (useReferenceCache) {
+            try {
+                mirror = ReferenceCache.getInstance().update(gitExe,
+                    remoteRepository.getURIs().get(0).toPrivateString(), listener, environment);
+            } catch (Exception e) {
+                // the clone below gets everything from the remote
+                e.printStackTrace(listener.error("Could not update the reference repository"));
+            }
+        }
+        try {
+            cloneFrom(git, remoteRepository, mirror);
+        } catch (GitException e) {
+            cloneFrom(git, widenRefSpecs(git, remoteRepository, e, listener), mirror);
+        }
+    }
+
+    private void cloneFrom(IGitAPI git, RemoteConfig remoteRepository, File mirror) {
+        if (mirror != null) {
+            git.clone_cgit(remoteRepository, shallowDepth, mirror.getAbsolutePath());
+        } else if (shallowDepth > 0) {
+            git.clone_cgit(remoteRepository, shallowDepth);
+        } else if (useCgitClone || narrowRefSpecs) {
+            // JGit clones every branch regardless of the refspecs
+            git.clone_cgit(remoteRepository);
+        } else {
+            git.clone(remoteRepository);
+        }
+    }
+
+    /**
+     * Creates one fetch per remote repository into the given workspace.
+     *
+     * @param gitExe git executable.
+     * @param workspace repository to fetch into.
+     * @param environment environment.
+     * @param remoteRepositories remote repositories to fetch from.
+     * @return fetches for {@link ParallelFetcher}.
+     */
+    private List<ParallelFetcher.Fetch> fetchesOf(String gitExe, FilePath workspace, EnvVars environment,
+                                                  List<RemoteConfig> remoteRepositories) {
+        List<ParallelFetcher.Fetch> fetches = new ArrayList<ParallelFetcher.Fetch>();
+        for (RemoteConfig remoteRepository : remoteRepositories) {
+            fetches.add(new RemoteFetch(gitExe, workspace, environment, remoteRepository));
+        }
+        return fetches;
+    }
+
+    /**
+     * Runs the given fetches, in parallel if possible.
+     *
+     * @param fetches fetches.
+     * @param listener listener.
+     * @return true if at least one fetch goes through, false otherwise.
+     */
+    private boolean fetchFromAll(List<ParallelFetcher.Fetch> fetches, TaskListener listener) {
+        boolean fetched = false;
+        for (boolean result : ParallelFetcher.fetchAll(fetches, listener)) {
+            fetched |= result;
+        }
+        return fetched;
+    }
+
+    /**
+     * Fetch from a remote repository into a workspace, with its own {@link IGitAPI} so that it can run
+     * alongside other fetches.
+     */
+    private class RemoteFetch implements ParallelFetcher.Fetch {
+        private final String gitExe;
+        private final FilePath workspace;
+        private final EnvVars environment;
+        private final RemoteConfig remoteRepository;
+
+        private RemoteFetch(String gitExe, FilePath workspace, EnvVars environment, RemoteConfig remoteRepository) {
+            this.gitExe = gitExe;
+            this.workspace = workspace;
+            this.environment = environment;
+            this.remoteRepository = remoteRepository;
+        }
+
+        public String getName() {
+            return remoteRepository.getName() + " into " + workspace.getRemote();
+        }
+
+        public boolean fetch(TaskListener listener) {
+            if (useReferenceCache) {
+                // Only workspaces cloned with the cache borrow from it; others keep their own objects.
+                String url = remoteRepository.getURIs().get(0).toPrivateString();
+                try {
+                    if (ReferenceCache.isLinked(new File(workspace.getRemote(), Constants.DOT_GIT),
+                        ReferenceCache.getInstance().getMirror(url))) {
+                        ReferenceCache.getInstance().update(gitExe, url, listener, environment);
+                    }
+                } catch (Exception e) {
+                    // the fetch below still gets everything from the remote
+                    e.printStackTrace(listener.error("Could not update the reference repository"));
+                }
+            }
+            IGitAPI git = new GitAPI(gitExe, workspace, listener, environment);
+            try {
+                return fetchFrom(git, listener, remoteRepository);
+            } finally {
+                git.close();
+            }
+        }
+    }
+
     /**
      * Fetch submodule information from relative to a particular remote repository.
      *
@@ -1923,6 +2500,28 @@ public class GitSCM extends SCM implements Serializable {
         }
     }
 
+    /**
+     * Records the change log of {@code revToBuild} either into the given stream or into the returned string.
+     *
+     * @param changelog stream to write to, or null to return the change log.
+     * @return the change log, or an empty string if it was written to {@code changelog}.
+     */
+    private String recordChangeLog(IGitAPI git, Revision revToBuild, BuildListener listener, BuildData buildData,
+                                   List<RemoteConfig> paramRepos, ChangelogStream changelog) throws IOException {
+        if (changelog == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            computeChangeLog(git, revToBuild, listener, buildData, paramRepos, out);
+            return out.toString("UTF-8");
+        }
+        OutputStream out = changelog.open();
+        try {
+            computeChangeLog(git, revToBuild, listener, buildData, paramRepos, out);
+        } finally {
+            out.close();
+        }
+        return "";
+    }
+
     /**
      * Build up change log from all the branches that we've merged into {@code revToBuild}
      *
@@ -1931,20 +2530,29 @@ public class GitSCM extends SCM implements Serializable {
      * @param listener Used for writing to build console
      * @param buildData Information that captures what we did during the last build. We need this for changelog,
      * or else we won't know where to stop.
+     * @param paramRepos Remote repositories a shallow clone is deepened from
+     * @param out Stream the change log is written to
      */
-    private String computeChangeLog(IGitAPI git, Revision revToBuild, BuildListener listener, BuildData buildData)
-        throws IOException {
+    private void computeChangeLog(IGitAPI git, Revision revToBuild, BuildListener listener, BuildData buildData,
+                                  List<RemoteConfig> paramRepos, OutputStream out) throws IOException {
         int histories = 0;
 
-        StringBuilder changeLog = new StringBuilder();
         try {
             for (Branch b : revToBuild.getBranches()) {
                 Build lastRevWas = buildChooser.prevBuildForChangelog(b.getName(), buildData, git);
                 if (lastRevWas != null) {
-                    if (git.isCommitInRepo(lastRevWas.getSHA1().name())) {
-                        changeLog.append(putChangelogDiffsIntoFile(git, b.name, lastRevWas.getSHA1().name(),
-                            revToBuild.getSha1().name()));
+                    String lastSha1 = lastRevWas.getSHA1().name();
+                    if (deepenToLastBuild && !git.isCommitInRepo(lastSha1) && git.isShallow()) {
+                        deepenTo(git, lastSha1, paramRepos, listener);
+                    }
+                    if (git.isCommitInRepo(lastSha1)) {
+                        putChangelogDiffsIntoFile(git, b.name, lastRevWas.getSHA1().name(),
+                            revToBuild.getSha1().name(), out);
                         histories++;
+                    } else if (git.isShallow()) {
+                        listener.getLogger()
+                            .println("Could not record history. Previous build's commit, " + lastSha1
+                                + ", is outside of the shallow clone.");
                     } else {
                         listener.getLogger()
                             .println("Could not record history. Previous build's commit, " + lastRevWas.getSHA1().name()
@@ -1955,113 +2563,156 @@ public class GitSCM extends SCM implements Serializable {
                 }
             }
         } catch (GitException ge) {
-            changeLog.append("Unable to retrieve changeset");
+            out.write("Unable to retrieve changeset".getBytes("UTF-8"));
         }
 
         if (histories > 1) {
             listener.getLogger().println("Warning : There are multiple branch changesets here");
         }
+    }
 
-        return changeLog.toString();
+    /**
+     * Deepens a shallow clone until it contains the given commit, doubling the number of fetched commits each
+     * time, up to {@link #MAX_DEEPEN} commits or until the history is complete.
+     */
+    private void deepenTo(IGitAPI git, String sha1, List<RemoteConfig> paramRepos, TaskListener listener) {
+        int deepened = 0;
+        int commits = Math.max(shallowDepth, 32);
+        while (deepened < MAX_DEEPEN && git.isShallow() && !git.isCommitInRepo(sha1)) {
+            commits = Math.min(commits, MAX_DEEPEN - deepened);
+            for (RemoteConfig remoteRepository : paramRepos) {
+                try {
+                    git.deepen(remoteRepository, commits);
+                } catch (GitException e) {
+                    e.printStackTrace(listener.error("Could not deepen the history from "
+                        + remoteRepository.getName()));
+                    return;
+                }
+            }
+            deepened += commits;
+            commits *= 2;
+        }
     }
 
-    private String putChangelogDiffsIntoFile(IGitAPI git, String branchName, String revFrom,
-                                             String revTo) throws IOException {
-        ByteArrayOutputStream fos = new ByteArrayOutputStream();
-        // fos.write("<data><![CDATA[".getBytes());
+    private void putChangelogDiffsIntoFile(IGitAPI git, String branchName, String revFrom,
+                                           String revTo, OutputStream out) throws IOException {
         String changeset = "Changes in branch " + branchName + ", between " + revFrom + " and " + revTo + "\n";
-        fos.write(changeset.getBytes());
+        out.write(changeset.getBytes("UTF-8"));
 
-        git.changelog(revFrom, revTo, fos);
-        // fos.write("]]></data>".getBytes());
-        fos.close();
-        return fos.toString("UTF-8");
+        git.changelog(revFrom, revTo, out);
     }
 
 
     /**
-     * Given a Revision, check whether it matches any exclusion rules.
+     * Drops the revisions that match any exclusion rule. All revisions are shown by one batched git call
+     * instead of one {@code git show} per revision, and nothing is shown at all if there are no rules.
      *
      * @param git IGitAPI object
-     * @param r Revision object
+     * @param revisions candidate revisions
      * @param listener
-     * @return true if any exclusion files are matched, false otherwise.
+     * @return revisions that are not excluded.
      */
-    private boolean isRevExcluded(IGitAPI git, Revision r, TaskListener listener) {
+    private List<Revision> filterExcludedRevisions(IGitAPI git, Collection<Revision> revisions,
+                                                   TaskListener listener) {
+        List<Revision> result = new ArrayList<Revision>(revisions.size());
+        RegionMatcher includedMatcher = getIncludedRegionsMatcher();
+        RegionMatcher excludedMatcher = getExcludedRegionsMatcher();
+        Set<String> excludedUsers = getExcludedUsersNormalized();
+        if (revisions.isEmpty() || (includedMatcher.isEmpty() && excludedMatcher.isEmpty()
+            && excludedUsers.isEmpty() && (excludedCommits == null || excludedCommits.isEmpty()))) {
+            result.addAll(revisions);
+            return result;
+        }
+
+        Map<String, List<String>> revShows;
         try {
-            List<String> revShow = git.showRevision(r);
+            revShows = git.showRevisions(revisions);
+        } catch (GitException e) {
+            // If an error was hit getting the revision info, assume something
+            // else entirely is wrong and we don't care, so nothing is excluded.
+            result.addAll(revisions);
+            return result;
+        }
 
-            // If the revision info is empty, something went weird, so we'll just
-            // return false.
-            if (revShow.size() == 0) {
-                return false;
+        for (Revision r : revisions) {
+            List<String> revShow = revShows.get(r.getSha1String());
+            if (revShow == null
+                || !isRevExcluded(r, revShow, includedMatcher, excludedMatcher, excludedUsers, listener)) {
+                result.add(r);
             }
+        }
+        return result;
+    }
 
-            // Has this revision been specifically excluded?
-            if (excludedCommits != null && excludedCommits.contains(r.getSha1String())) {
-                listener.getLogger().println("Ignored commit " + r.getSha1String() + ": This commit has been explicitly excluded from triggering builds.");
-                return true;
-            }
-            
-            GitChangeSet change = new GitChangeSet(revShow, authorOrCommitter);
+    /**
+     * Given a Revision, check whether it matches any exclusion rules.
+     *
+     * @param r Revision object
+     * @param revShow the revision as shown by {@link IGitAPI#showRevision(Revision)}
+     * @param includedMatcher included regions
+     * @param excludedMatcher excluded regions
+     * @param excludedUsers excluded users
+     * @param listener
+     * @return true if any exclusion files are matched, false otherwise.
+     */
+    private boolean isRevExcluded(Revision r, List<String> revShow, RegionMatcher includedMatcher,
+                                  RegionMatcher excludedMatcher, Set<String> excludedUsers, TaskListener listener) {
+        // If the revision info is empty, something went weird, so we'll just
+        // return false.
+        if (revShow.size() == 0) {
+            return false;
+        }
 
-            Pattern[] includedPatterns = getIncludedRegionsPatterns();
-            Pattern[] excludedPatterns = getExcludedRegionsPatterns();
-            Set<String> excludedUsers = getExcludedUsersNormalized();
+        // Has this revision been specifically excluded?
+        if (excludedCommits != null && excludedCommits.contains(r.getSha1String())) {
+            listener.getLogger().println("Ignored commit " + r.getSha1String() + ": This commit has been explicitly excluded from triggering builds.");
+            return true;
+        }
+        
+        GitChangeSet change = new GitChangeSet(revShow, authorOrCommitter);
 
-            String author = change.getAuthorName();
-            if (excludedUsers.contains(author)) {
-                // If the author is an excluded user, don't count this entry as a change
-                listener.getLogger()
-                    .println("Ignored commit " + r.getSha1String() + ": Found excluded author: " + author);
-                return true;
-            }
+        String author = change.getAuthorName();
+        if (excludedUsers.contains(author)) {
+            // If the author is an excluded user, don't count this entry as a change
+            listener.getLogger()
+                .println("Ignored commit " + r.getSha1String() + ": Found excluded author: " + author);
+            return true;
+        }
 
-            List<String> paths = new ArrayList<String>(change.getAffectedPaths());
-            if (paths.isEmpty()) {
-                // If there weren't any changed files here, we're just going to return false.
-                return false;
-            }
+        List<String> paths = new ArrayList<String>(change.getAffectedPaths());
+        if (paths.isEmpty()) {
+            // If there weren't any changed files here, we're just going to return false.
+            return false;
+        }
 
-           // Assemble the list of included paths
-            List<String> includedPaths = new ArrayList<String>();
-            if (includedPatterns.length > 0) {
-               for (String path : paths) {
-                   for (Pattern pattern : includedPatterns) {
-                       if (pattern.matcher(path).matches()) {
-                           includedPaths.add(path);
-                           break;
-                       }
-                   }
+       // Assemble the list of included paths
+        List<String> includedPaths = new ArrayList<String>();
+        if (!includedMatcher.isEmpty()) {
+           for (String path : paths) {
+               if (includedMatcher.matches(path)) {
+                   includedPaths.add(path);
                }
-           } else {
-               includedPaths = paths;
            }
-
-           // Assemble the list of excluded paths
-            List<String> excludedPaths = new ArrayList<String>();
-            if (excludedPatterns.length > 0) {
-                for (String path : includedPaths) {
-                    for (Pattern pattern : excludedPatterns) {
-                        if (pattern.matcher(path).matches()) {
-                            excludedPaths.add(path);
-                            break;
-                        }
-                    }
+       } else {
+           includedPaths = paths;
+       }
+
+       // Assemble the list of excluded paths
+        List<String> excludedPaths = new ArrayList<String>();
+        if (!excludedMatcher.isEmpty()) {
+            for (String path : includedPaths) {
+                if (excludedMatcher.matches(path)) {
+                    excludedPaths.add(path);
                 }
             }
+        }
 
-            // If every affected path is excluded, return true.
-            if (includedPaths.size() == excludedPaths.size()) {
-                listener.getLogger().println("Ignored commit " + r.getSha1String()
-                    + ": Found only excluded paths: "
-                    + Util.join(excludedPaths, ", "));
-                return true;
-            }
-        } catch (GitException e) {
-            // If an error was hit getting the revision info, assume something
-            // else entirely is wrong and we don't care, so return false.
-            return false;
+        // If every affected path is excluded, return true.
+        if (includedPaths.size() == excludedPaths.size()) {
+            listener.getLogger().println("Ignored commit " + r.getSha1String()
+                + ": Found only excluded paths: "
+                + Util.join(excludedPaths, ", "));
+            return true;
         }
 
         // By default, return false.
@@ -2111,6 +2762,17 @@ public class GitSCM extends SCM implements Serializable {
      */
     public static boolean VERBOSE = Boolean.getBoolean(GitSCM.class.getName() + ".verbose");
 
+    /**
+     * Whether the change log is streamed into the changelog file as git produces it. Set the
+     * {@code bufferChangelog} property to collect it in memory and send it back to the master in one piece.
+     */
+    public static boolean STREAM_CHANGELOG = !Boolean.getBoolean(GitSCM.class.getName() + ".bufferChangelog");
+
+    /**
+     * Maximum number of commits a shallow clone is deepened by to find the last built revision.
+     */
+    public static int MAX_DEEPEN = Integer.getInteger(GitSCM.class.getName() + ".maxDeepen", 10000);
+
     /**
      * Class to encapsulate configuration data.
      */
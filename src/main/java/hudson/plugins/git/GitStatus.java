@@ -1,14 +1,18 @@
 package hudson.plugins.git;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import hudson.Extension;
 import hudson.ExtensionPoint;
 import hudson.Util;
 import hudson.model.AbstractModelObject;
 import hudson.model.AbstractProject;
+import hudson.model.Cause;
 import hudson.model.Hudson;
 import hudson.model.UnsecuredRootAction;
+import hudson.plugins.git.util.BuildData;
+import hudson.plugins.git.util.PollingBackoff;
+import hudson.plugins.git.util.ReferenceCache;
+import hudson.plugins.git.util.RemoteHeadsCache;
 import hudson.scm.SCM;
 import hudson.triggers.SCMTrigger;
 import java.io.IOException;
@@ -17,13 +21,17 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
+import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.hudson.security.HudsonSecurityManager;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
 import org.kohsuke.stapler.*;
@@ -35,6 +43,12 @@ import org.kohsuke.stapler.*;
 @Extension
 public class GitStatus extends AbstractModelObject implements UnsecuredRootAction{
 
+    /**
+     * Set to true to answer notifyCommit with 202 right away and let {@link NotifyCommitDispatcher}
+     * coalesce and dispatch the notifications in the background.
+     */
+    public static boolean ASYNC_NOTIFY_COMMIT = Boolean.getBoolean(GitStatus.class.getName() + ".asyncNotifyCommit");
+
     public String getDisplayName() {
         return "Git";
     }
@@ -52,13 +66,54 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
         return "git";
     }
 
-    public HttpResponse doNotifyCommit(@QueryParameter(required = true) String url, @QueryParameter(required = false) String branches) throws ServletException, IOException {
+    /**
+     * Notifies the jobs using the given repository about a push.
+     * <p/>
+     * Without a commit, the matching jobs are polled. If the hook sends the pushed commit, either as {@code sha1}
+     * or as the {@code after} half of a {@code before}/{@code after} pair, the matching jobs build that commit
+     * right away and the poll is skipped.
+     *
+     * @param url the repository url.
+     * @param branches the (optional) comma separated branches.
+     * @param sha1 the (optional) commit to build.
+     * @param before the (optional) commit the branch pointed to before the push.
+     * @param after the (optional) commit the branch points to after the push.
+     * @return the response.
+     */
+    public HttpResponse doNotifyCommit(@QueryParameter(required = true) final String url,
+                                       @QueryParameter(required = false) String branches,
+                                       @QueryParameter(required = false) String sha1,
+                                       @QueryParameter(required = false) String before,
+                                       @QueryParameter(required = false) String after)
+        throws ServletException, IOException {
         URIish uri;
         try {
             uri = new URIish(url);
         } catch (URISyntaxException e) {
             return HttpResponses.error(SC_BAD_REQUEST, new Exception("Illegal URL: " + url, e));
         }
+        RemoteHeadsCache.getInstance().invalidate(uri);
+        ReferenceCache.getInstance().invalidate(uri);
+        PollingBackoff.getInstance().invalidate(uri);
+
+        sha1 = Util.fixEmptyAndTrim(sha1);
+        before = Util.fixEmptyAndTrim(before);
+        after = Util.fixEmptyAndTrim(after);
+        if (sha1 == null && after != null) {
+            if (ObjectId.zeroId().name().equals(after)) {
+                return HttpResponses.plainText("Ignoring deletion of a branch in repository " + url);
+            }
+            if (after.equals(before)) {
+                return HttpResponses.plainText("No changes in repository " + url);
+            }
+            sha1 = after;
+        }
+        if (sha1 != null) {
+            if (!ObjectId.isId(sha1)) {
+                return HttpResponses.error(SC_BAD_REQUEST, new Exception("Illegal commit: " + sha1));
+            }
+            sha1 = sha1.toLowerCase(Locale.ENGLISH);
+        }
 
         branches = Util.fixEmptyAndTrim(branches);
         String[] branchesArray;
@@ -68,11 +123,23 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
             branchesArray = branches.split(",");
         }
 
-        final List<ResponseContributor> contributors = new ArrayList<ResponseContributor>();
-        for (Listener listener : Hudson.getInstance().getExtensionList(Listener.class)) {
-            contributors.addAll(listener.onNotifyCommit(uri, branchesArray));
+        if (ASYNC_NOTIFY_COMMIT) {
+            if (!NotifyCommitDispatcher.getInstance().submit(uri, sha1, branchesArray)) {
+                return HttpResponses.error(SC_SERVICE_UNAVAILABLE,
+                    new Exception("Too many pending notifications, try again later"));
+            }
+            return new HttpResponse() {
+                public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node)
+                        throws IOException, ServletException {
+                    rsp.setStatus(SC_ACCEPTED);
+                    rsp.setContentType("text/plain");
+                    rsp.getWriter().println("Scheduled notification of repository " + url);
+                }
+            };
         }
 
+        final List<ResponseContributor> contributors = fireNotifyCommit(uri, sha1, branchesArray);
+
         return new HttpResponse() {
             public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node)
                     throws IOException, ServletException {
@@ -89,6 +156,45 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
         };
     }
 
+    /**
+     * Reports the state of the asynchronous notifyCommit dispatcher.
+     *
+     * @return plain text statistics.
+     */
+    public HttpResponse doNotifyCommitStats() {
+        final NotifyCommitDispatcher dispatcher = NotifyCommitDispatcher.getInstance();
+        return new HttpResponse() {
+            public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node)
+                    throws IOException, ServletException {
+                rsp.setStatus(SC_OK);
+                rsp.setContentType("text/plain");
+                PrintWriter w = rsp.getWriter();
+                w.println("queueDepth=" + dispatcher.getQueueDepth());
+                w.println("received=" + dispatcher.getReceived());
+                w.println("coalesced=" + dispatcher.getCoalesced());
+                w.println("rejected=" + dispatcher.getRejected());
+                w.println("dispatched=" + dispatcher.getDispatched());
+                w.println("coalescingRatio=" + dispatcher.getCoalescingRatio());
+            }
+        };
+    }
+
+    /**
+     * Passes a notification on to every {@link Listener}.
+     *
+     * @param uri the repository uri.
+     * @param sha1 the (optional) pushed commit.
+     * @param branches the (optional) branch information.
+     * @return response contributors of the listeners.
+     */
+    static List<ResponseContributor> fireNotifyCommit(URIish uri, String sha1, String[] branches) {
+        List<ResponseContributor> contributors = new ArrayList<ResponseContributor>();
+        for (Listener listener : Hudson.getInstance().getExtensionList(Listener.class)) {
+            contributors.addAll(listener.onNotifyCommit(uri, sha1, branches));
+        }
+        return contributors;
+    }
+
     private static Collection<GitSCM> getProjectScms(AbstractProject<?, ?> project) {
         Set<GitSCM> projectScms = Sets.newHashSet();
         if (projectScms.isEmpty()) {
@@ -112,7 +218,7 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
                 && StringUtils.equals(normalizePath(lhs.getPath()), normalizePath(rhs.getPath()));
     }
 
-    private static String normalizePath(String path) {
+    static String normalizePath(String path) {
         if (path.startsWith("/")) {
             path = path.substring(1);
         }
@@ -126,7 +232,7 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
     }
 
     /**
-     * Contributes to a {@link #doNotifyCommit(String, String)} response.
+     * Contributes to a {@link #doNotifyCommit(String, String, String, String, String)} response.
      *
      * @since 1.4.1
      */
@@ -182,6 +288,21 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
          * @since 1.4.1
          */
         public abstract List<ResponseContributor> onNotifyCommit(URIish uri, String... branches);
+
+        /**
+         * Called when there is a change notification on a specific repository
+         * url that names the pushed commit. Listeners that cannot use the commit
+         * are notified through {@link #onNotifyCommit(URIish, String...)}.
+         *
+         * @param uri the repository uri.
+         * @param sha1 the (optional) pushed commit.
+         * @param branches the (optional) branch information.
+         * @return any response contributors for the response to the push
+         * request.
+         */
+        public List<ResponseContributor> onNotifyCommit(URIish uri, String sha1, String[] branches) {
+            return onNotifyCommit(uri, branches);
+        }
     }
 
     /**
@@ -199,6 +320,14 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
          */
         @Override
         public List<ResponseContributor> onNotifyCommit(URIish uri, String... branches) {
+            return onNotifyCommit(uri, null, branches);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public List<ResponseContributor> onNotifyCommit(URIish uri, String sha1, String[] branches) {
             List<ResponseContributor> result = new ArrayList<ResponseContributor>();
             // run in high privilege to see all the projects anonymous users don't see.
             // this is safe because when we actually schedule a build, it's a build that can
@@ -206,15 +335,12 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
             HudsonSecurityManager.grantFullControl();
             try {
 
-                final List<AbstractProject<?, ?>> projects = Lists.newArrayList();
-                boolean scmFound = false,
+                boolean scmFound = GitProjectIndex.getInstance().hasProjects(),
                         triggerFound = false,
                         urlFound = false;
-                for (final AbstractProject<?, ?> project : Hudson.getInstance().getAllItems(AbstractProject.class)) {
+                for (final AbstractProject<?, ?> project : GitProjectIndex.getInstance().getProjects(uri)) {
                     Collection<GitSCM> projectSCMs = getProjectScms(project);
                     for (GitSCM git : projectSCMs) {
-                        scmFound = true;
-
                         for (RemoteConfig repository : git.getRepositories()) {
                             boolean repositoryMatches = false,
                                     branchMatches = false;
@@ -259,10 +385,26 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
                                 continue;
                             }
 
-                            if (!project.isDisabled()) {
+                            if (project.isDisabled()) {
+                                break;
+                            }
+                            if (sha1 != null && git.getExcludedCommits() != null
+                                && git.getExcludedCommits().contains(sha1)) {
+                                result.add(new MessageResponseContributor(
+                                    "Commit " + sha1 + " is excluded from " + project.getFullDisplayName()));
+                            } else if (sha1 == null || branches.length == 0) {
+                                // without a branch, the commit may not be on one the job builds
                                 LOGGER.info("Triggering the polling of " + project.getFullDisplayName());
                                 trigger.run();
                                 result.add(new PollingScheduledResponseContributor(project));
+                            } else if (hasBeenBuilt(git, project, sha1)) {
+                                result.add(new MessageResponseContributor(
+                                    "Commit " + sha1 + " has already been built by " + project.getFullDisplayName()));
+                            } else {
+                                LOGGER.info("Scheduling " + project.getFullDisplayName() + " to build " + sha1);
+                                project.scheduleBuild2(project.getQuietPeriod(), new CommitHookCause(sha1),
+                                    new RevisionParameterAction(sha1, branches));
+                                result.add(new BuildScheduledResponseContributor(project, sha1));
                             }
                             break;
                         }
@@ -285,6 +427,14 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
             }
         }
 
+        private static boolean hasBeenBuilt(GitSCM git, AbstractProject<?, ?> project, String sha1) {
+            if (!ObjectId.isId(sha1)) {
+                return false;
+            }
+            BuildData buildData = git.getBuildData(project.getLastBuild(), false);
+            return buildData != null && buildData.hasBeenBuilt(ObjectId.fromString(sha1));
+        }
+
         /**
          * A response contributor for triggering polling of an
          * {@link AbstractProject}.
@@ -323,6 +473,49 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
                 w.println("Scheduled polling of " + project.getFullDisplayName());
             }
         }
+
+        /**
+         * A response contributor for scheduling a build of a pushed commit.
+         */
+        private static class BuildScheduledResponseContributor extends ResponseContributor {
+
+            /**
+             * The project
+             */
+            private final AbstractProject<?, ?> project;
+
+            /**
+             * The commit
+             */
+            private final String sha1;
+
+            /**
+             * Constructor.
+             *
+             * @param project the project.
+             * @param sha1 the commit.
+             */
+            public BuildScheduledResponseContributor(AbstractProject<?, ?> project, String sha1) {
+                this.project = project;
+                this.sha1 = sha1;
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void addHeaders(StaplerRequest req, StaplerResponse rsp) {
+                rsp.addHeader("Triggered", project.getAbsoluteUrl());
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void writeBody(PrintWriter w) {
+                w.println("Scheduled build of " + project.getFullDisplayName() + " for commit " + sha1);
+            }
+        }
     }
 
     /**
@@ -354,5 +547,34 @@ public class GitStatus extends AbstractModelObject implements UnsecuredRootActio
             w.println(msg);
         }
     }
+
+    /**
+     * Cause of a build scheduled for a commit named by a push notification.
+     */
+    public static class CommitHookCause extends Cause {
+
+        /**
+         * The commit.
+         */
+        public final String sha1;
+
+        /**
+         * Constructor.
+         *
+         * @param sha1 the commit.
+         */
+        public CommitHookCause(String sha1) {
+            this.sha1 = sha1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getShortDescription() {
+            return hudson.plugins.git.Messages.GitStatus_CommitHookCause_ShortDescription(sha1);
+        }
+    }
+
     private static final Logger LOGGER = Logger.getLogger(GitStatus.class.getName());
 }
@@ -5,7 +5,9 @@ import hudson.model.TaskListener;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.RemoteConfig;
@@ -97,6 +99,44 @@ public interface IGitAPI {
     
     void clone_cgit(RemoteConfig source) throws GitException;
 
+    /**
+     * Clones with command line git like {@link #clone_cgit(RemoteConfig)}, keeping only the given number of
+     * commits of history of each branch.
+     *
+     * @param source remote repository.
+     * @param depth number of commits to fetch, or zero or less for the full history.
+     * @throws GitException if cloning fails.
+     */
+    void clone_cgit(RemoteConfig source, int depth) throws GitException;
+
+    /**
+     * Clones with command line git like {@link #clone_cgit(RemoteConfig, int)}, borrowing objects from a
+     * reference repository through {@code objects/info/alternates}.
+     *
+     * @param source remote repository.
+     * @param depth number of commits to fetch, or zero or less for the full history.
+     * @param reference path of the reference repository, or null.
+     * @throws GitException if cloning fails.
+     */
+    void clone_cgit(RemoteConfig source, int depth, String reference) throws GitException;
+
+    /**
+     * Fetches the given number of additional commits of history into a shallow repository.
+     *
+     * @param remoteRepository remote repository.
+     * @param commits number of commits to deepen the history by.
+     * @throws GitException if the fetch fails.
+     */
+    void deepen(RemoteConfig remoteRepository, int commits) throws GitException;
+
+    /**
+     * Tells whether the repository is a shallow clone, i.e. has an incomplete history.
+     *
+     * @return true if the repository is shallow.
+     * @throws GitException if the repository cannot be checked.
+     */
+    boolean isShallow() throws GitException;
+
     void clone(RemoteConfig source) throws GitException;
 
     void clean() throws GitException;
@@ -148,6 +188,15 @@ public interface IGitAPI {
      */
     void checkoutBranch(String branch, String commitish) throws GitException;
 
+    /**
+     * Restricts the working tree to the paths matching the given sparse checkout patterns, starting with the
+     * next checkout, or restores the full working tree right away.
+     *
+     * @param patterns patterns in the format of {@code .git/info/sparse-checkout}, or null for the full tree.
+     * @throws GitException if the sparse checkout cannot be configured.
+     */
+    void setSparseCheckout(List<String> patterns) throws GitException;
+
     void add(String filePattern) throws GitException;
 
     void branch(String name) throws GitException;
@@ -170,9 +219,37 @@ public interface IGitAPI {
 
     ObjectId mergeBase(ObjectId sha1, ObjectId sha12);
 
+    /**
+     * Returns those of the given commits that are not an ancestor of any other given commit.
+     * Commits that are not present in the repository are considered tips.
+     *
+     * @param commits candidate commits.
+     * @return tip commits.
+     * @throws GitException if the repository cannot be walked.
+     */
+    Set<ObjectId> getTipCommits(Collection<ObjectId> commits) throws GitException;
+
     String getAllLogEntries(String branch);
 
     List<String> showRevision(Revision r) throws GitException;
+
+    /**
+     * Shows several revisions like {@link #showRevision(Revision)} does, using as few git processes as possible.
+     *
+     * @param revisions revisions to show.
+     * @return lines of each revision, keyed by SHA1. Revisions that could not be shown are missing.
+     * @throws GitException if git fails.
+     */
+    Map<String, List<String>> showRevisions(Collection<Revision> revisions) throws GitException;
     
     String getHeadRev(String remoteRepoUrl, String branch) throws GitException;
+
+    /**
+     * Lists the branches of a remote repository with a single {@code git ls-remote}.
+     *
+     * @param remoteRepoUrl remote repository URL.
+     * @return head commits keyed by full ref name, e.g. {@code refs/heads/master}.
+     * @throws GitException if git fails.
+     */
+    Map<String, ObjectId> getRemoteHeads(String remoteRepoUrl) throws GitException;
 }
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * Dispatches {@link GitStatus#doNotifyCommit(String, String, String, String, String)} notifications to the
+ * {@link GitStatus.Listener}s off the request thread.
+ * <p/>
+ * A notification is held back for a short window; further notifications for the same repository and branches
+ * arriving within that window are merged into it, keeping the latest pushed commit, so a burst of pushes schedules
+ * a single poll or build. Pending
+ * notifications are bounded, and dispatched by a fixed number of worker threads.
+ */
+public final class NotifyCommitDispatcher {
+
+    /**
+     * Number of worker threads.
+     */
+    public static final int WORKERS = Integer.getInteger(NotifyCommitDispatcher.class.getName() + ".workers", 2);
+
+    /**
+     * Maximum number of pending notifications. Further notifications are rejected.
+     */
+    public static final int QUEUE_SIZE = Integer.getInteger(NotifyCommitDispatcher.class.getName() + ".queueSize",
+        1000);
+
+    /**
+     * Time in milliseconds a notification waits for duplicates before it is dispatched.
+     */
+    public static final long WINDOW = Long.getLong(NotifyCommitDispatcher.class.getName() + ".window", 2000L);
+
+    private static final NotifyCommitDispatcher INSTANCE = new NotifyCommitDispatcher(WORKERS, QUEUE_SIZE, WINDOW);
+
+    private final ScheduledExecutorService executor;
+    private final int queueSize;
+    private final long window;
+
+    /**
+     * Pending notifications by repository and branches.
+     */
+    private final Map<String, Notification> pending = new HashMap<String, Notification>();
+
+    private long received;
+    private long coalesced;
+    private long rejected;
+    private long dispatched;
+
+    NotifyCommitDispatcher(int workers, int queueSize, long window) {
+        this.queueSize = queueSize;
+        this.window = window;
+        this.executor = Executors.newScheduledThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Git notifyCommit dispatcher " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the dispatcher of this Hudson instance.
+     *
+     * @return dispatcher.
+     */
+    public static NotifyCommitDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues a notification, merging it into a pending notification for the same repository and branches. The
+     * merged notification builds the commit pushed last, if any.
+     *
+     * @param uri repository URI.
+     * @param sha1 pushed commit, may be null.
+     * @param branches notified branches, may be empty.
+     * @return false if the notification was rejected because the queue is full.
+     */
+    public boolean submit(URIish uri, String sha1, String[] branches) {
+        String[] sortedBranches = branches.clone();
+        Arrays.sort(sortedBranches);
+        String key = GitProjectIndex.key(uri) + '\0' + StringUtils.join(sortedBranches, ",");
+
+        Notification notification;
+        synchronized (this) {
+            received++;
+            notification = pending.get(key);
+            if (notification != null) {
+                coalesced++;
+                if (sha1 != null) {
+                    notification.sha1 = sha1;
+                }
+                return true;
+            }
+            if (pending.size() >= queueSize) {
+                rejected++;
+                return false;
+            }
+            notification = new Notification(key, uri, sha1, branches);
+            pending.put(key, notification);
+        }
+        executor.schedule(notification, window, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Returns the number of notifications waiting to be dispatched.
+     *
+     * @return queue depth.
+     */
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of notifications received.
+     *
+     * @return received notifications.
+     */
+    public synchronized long getReceived() {
+        return received;
+    }
+
+    /**
+     * Returns the number of notifications merged into a pending one.
+     *
+     * @return coalesced notifications.
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Returns the number of notifications rejected because the queue was full.
+     *
+     * @return rejected notifications.
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the number of notifications passed on to the listeners.
+     *
+     * @return dispatched notifications.
+     */
+    public synchronized long getDispatched() {
+        return dispatched;
+    }
+
+    /**
+     * Returns the share of received notifications that were merged into another one.
+     *
+     * @return coalescing ratio between 0 and 1.
+     */
+    public synchronized double getCoalescingRatio() {
+        return received == 0 ? 0 : (double) coalesced / received;
+    }
+
+    private final class Notification implements Runnable {
+        private final String key;
+        private final URIish uri;
+        /**
+         * Latest pushed commit, guarded by the dispatcher.
+         */
+        private String sha1;
+        private final String[] branches;
+
+        private Notification(String key, URIish uri, String sha1, String[] branches) {
+            this.key = key;
+            this.uri = uri;
+            this.sha1 = sha1;
+            this.branches = branches;
+        }
+
+        public void run() {
+            String sha1;
+            synchronized (NotifyCommitDispatcher.this) {
+                pending.remove(key);
+                dispatched++;
+                sha1 = this.sha1;
+            }
+            try {
+                GitStatus.fireNotifyCommit(uri, sha1, branches);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to dispatch notification for " + uri, e);
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(NotifyCommitDispatcher.class.getName());
+}
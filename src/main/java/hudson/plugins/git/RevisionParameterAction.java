@@ -23,8 +23,14 @@
  */
 package hudson.plugins.git;
 
+import hudson.model.Action;
 import hudson.model.InvisibleAction;
+import hudson.model.Queue;
+import hudson.model.Queue.QueueAction;
+import hudson.model.queue.FoldableAction;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 import org.eclipse.jgit.lib.ObjectId;
 
 /**
@@ -32,14 +38,33 @@ import org.eclipse.jgit.lib.ObjectId;
  *
  * @author Kohsuke Kawaguchi
  */
-public class RevisionParameterAction extends InvisibleAction implements Serializable {
+public class RevisionParameterAction extends InvisibleAction implements Serializable, QueueAction, FoldableAction {
     /**
      * SHA1, ref name, etc. that can be "git rev-parse"d into a specific commit.
      */
     public final String commit;
 
+    /**
+     * Sorted names of the branches the commit was pushed to, or null if unknown.
+     */
+    private final String[] branches;
+
     public RevisionParameterAction(String commit) {
+        this(commit, null);
+    }
+
+    /**
+     * @param commit commit to build.
+     * @param branches branches the commit was pushed to, null if unknown.
+     */
+    public RevisionParameterAction(String commit, String[] branches) {
         this.commit = commit;
+        if (branches != null && branches.length > 0) {
+            this.branches = branches.clone();
+            Arrays.sort(this.branches);
+        } else {
+            this.branches = null;
+        }
     }
 
     public Revision toRevision(IGitAPI git) {
@@ -49,6 +74,35 @@ public class RevisionParameterAction extends InvisibleAction implements Serializ
         return revision;
     }
 
+    /**
+     * Schedules a build of this commit unless the queued item already builds it, or builds an older commit pushed to
+     * the same branches, which {@link #foldIntoExisting(Queue.Item, Queue.Task, List)} then replaces. Commits of
+     * other branches are queued separately.
+     */
+    public boolean shouldSchedule(List<Action> actions) {
+        for (Action action : actions) {
+            if (action instanceof RevisionParameterAction && supersedes((RevisionParameterAction) action)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes the queued item build this commit instead of the older one pushed to the same branches.
+     */
+    public void foldIntoExisting(Queue.Item item, Queue.Task owner, List<Action> otherActions) {
+        RevisionParameterAction queued = item.getAction(RevisionParameterAction.class);
+        if (queued != null && queued != this && !commit.equals(queued.commit) && supersedes(queued)) {
+            item.getActions().remove(queued);
+            item.getActions().add(this);
+        }
+    }
+
+    private boolean supersedes(RevisionParameterAction queued) {
+        return commit.equals(queued.commit) || (branches != null && Arrays.equals(branches, queued.branches));
+    }
+
     @Override
     public String toString() {
         return super.toString() + "[commit=" + commit + "]";
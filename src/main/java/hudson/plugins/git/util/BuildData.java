@@ -24,16 +24,29 @@
 
 package hudson.plugins.git.util;
 
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.mapper.Mapper;
 import hudson.model.AbstractBuild;
 import hudson.model.Action;
 import hudson.model.Api;
+import hudson.model.Run;
 import hudson.plugins.git.Branch;
 import hudson.plugins.git.Revision;
+import hudson.util.XStream2;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.eclipse.jgit.lib.ObjectId;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
@@ -55,15 +68,36 @@ public class BuildData implements Action, Serializable, Cloneable {
      * <p/>
      * <p/>
      * This map contains all the branches we've built in the past (including the build that this {@link BuildData}
-     * is attached to)
+     * is attached to). Null until loaded from the {@link BuildDataStore} if the build data was stored there; use
+     * {@link #getBuildsByBranchName()} to read it.
+     * <p/>
+     * A {@link PersistentHashMap}, shared with the clones of this object until either of them saves a build. The
+     * {@link Build}s in it are shared too and must not be modified once saved.
      */
-    public Map<String, Build> buildsByBranchName = new HashMap<String, Build>();
+    public Map<String, Build> buildsByBranchName = new PersistentHashMap<String, Build>();
 
     /**
      * The last build that we did (among the values in {@link #buildsByBranchName}.)
      */
     public Build lastBuild;
 
+    /**
+     * Number of {@link #buildsByBranchName} entries per built SHA1, so that {@link #hasBeenBuilt(ObjectId)} does
+     * not have to scan every build. Built on first use and then kept up to date by {@link #saveBuild(Build)};
+     * shared with the clones like {@link #buildsByBranchName}.
+     */
+    private transient BuiltSha1Index builtSha1s;
+
+    /**
+     * Number of the build whose builds by branch name were recorded in the {@link BuildDataStore} of the job, or
+     * zero if they are persisted with this object.
+     */
+    private int storedBuildNumber;
+
+    /**
+     * Store {@link #buildsByBranchName} is loaded from.
+     */
+    private transient BuildDataStore store;
 
     public String getDisplayName() {
         return "Git Build Data";
@@ -78,7 +112,11 @@ public class BuildData implements Action, Serializable, Cloneable {
     }
 
     public Object readResolve() {
-        Map<String, Build> newBuildsByBranchName = new HashMap<String, Build>();
+        if (buildsByBranchName == null) {
+            // stored, loaded on first use
+            return this;
+        }
+        Map<String, Build> newBuildsByBranchName = new PersistentHashMap<String, Build>();
 
         for (Map.Entry<String, Build> buildByBranchName : buildsByBranchName.entrySet()) {
             String branchName = fixNull(buildByBranchName.getKey());
@@ -87,6 +125,7 @@ public class BuildData implements Action, Serializable, Cloneable {
         }
 
         this.buildsByBranchName = newBuildsByBranchName;
+        this.builtSha1s = indexBuiltSha1s();
 
         return this;
     }
@@ -99,28 +138,116 @@ public class BuildData implements Action, Serializable, Cloneable {
      * @return
      */
     public boolean hasBeenBuilt(ObjectId sha1) {
-        try {
-            for (Build b : buildsByBranchName.values()) {
-                if (b.revision.getSha1().equals(sha1)) {
-                    return true;
-                }
-            }
-
-            return false;
-        } catch (Exception ex) {
+        if (sha1 == null) {
             return false;
         }
+        return getBuiltSha1s().get(sha1) > 0;
     }
 
     public void saveBuild(Build build) {
         lastBuild = build;
+        BuiltSha1Index index = builtSha1s;
         for (Branch branch : build.revision.getBranches()) {
-            buildsByBranchName.put(fixNull(branch.getName()), build);
+            Build replaced = getBuildsMap().put(fixNull(branch.getName()), build);
+            if (index != null) {
+                count(index, replaced, -1);
+                count(index, build, 1);
+            }
+        }
+    }
+
+    private BuiltSha1Index getBuiltSha1s() {
+        if (builtSha1s == null) {
+            builtSha1s = indexBuiltSha1s();
+        }
+        return builtSha1s;
+    }
+
+    private BuiltSha1Index indexBuiltSha1s() {
+        BuiltSha1Index index = new BuiltSha1Index();
+        for (Build build : getBuildsMap().values()) {
+            count(index, build, 1);
         }
+        return index;
+    }
+
+    private static void count(BuiltSha1Index index, Build build, int delta) {
+        if (build == null || build.revision == null || build.revision.getSha1() == null) {
+            return;
+        }
+        index.add(build.revision.getSha1(), delta);
     }
 
     public Build getLastBuildOfBranch(String branch) {
-        return buildsByBranchName.get(branch);
+        return getBuildsMap().get(branch);
+    }
+
+    /**
+     * Records the builds by branch name in the given store, so that only {@link #lastBuild} is persisted with
+     * this object.
+     *
+     * @param store store of the job.
+     * @param buildNumber number of the build this object is attached to.
+     * @throws IOException if the store cannot be written.
+     */
+    public void store(BuildDataStore store, int buildNumber) throws IOException {
+        store.record(buildNumber, getBuildsMap());
+        this.store = store;
+        this.storedBuildNumber = buildNumber;
+    }
+
+    /**
+     * Tells this object which store its builds by branch name were recorded in.
+     *
+     * @param store store of the job this object belongs to.
+     */
+    public void attach(BuildDataStore store) {
+        if (this.store == null) {
+            this.store = store;
+        }
+    }
+
+    /**
+     * Returns the number of the build whose builds by branch name were recorded in the store.
+     *
+     * @return build number, or zero if not stored.
+     */
+    public int getStoredBuildNumber() {
+        return storedBuildNumber;
+    }
+
+    private Map<String, Build> getBuildsMap() {
+        Map<String, Build> builds = buildsByBranchName;
+        if (builds != null) {
+            return builds;
+        }
+        BuildDataStore from = store;
+        if (from == null) {
+            // rendered by the web UI or the remote API, which know the build
+            StaplerRequest request = Stapler.getCurrentRequest();
+            Run<?, ?> run = request == null ? null : request.findAncestorObject(Run.class);
+            if (run != null) {
+                from = BuildDataStore.forJob(run.getParent());
+            }
+        }
+        if (from == null) {
+            LOGGER.log(Level.WARNING, "No store to load the builds of build #{0} from", storedBuildNumber);
+            return new HashMap<String, Build>();
+        }
+        try {
+            builds = from.getBuildsByBranchName(storedBuildNumber);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not load the builds of build #" + storedBuildNumber, e);
+            return new HashMap<String, Build>();
+        }
+        buildsByBranchName = new PersistentHashMap<String, Build>(builds);
+        return buildsByBranchName;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // the store cannot be reached where the copy is read, e.g. by a poll on a slave
+        getBuildsMap();
+        out.defaultWriteObject();
     }
 
     @Exported
@@ -130,10 +257,17 @@ public class BuildData implements Action, Serializable, Cloneable {
 
     @Exported
     public Map<String, Build> getBuildsByBranchName() {
-        return buildsByBranchName;
+        return getBuildsMap();
     }
 
+    /**
+     * Returns a copy of this build data, which shares the builds by branch name with this object until either
+     * of them saves a build.
+     *
+     * @return copy of this build data.
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public BuildData clone() {
         BuildData clone;
         try {
@@ -142,30 +276,20 @@ public class BuildData implements Action, Serializable, Cloneable {
             throw new RuntimeException("Error cloning BuildData", e);
         }
 
-        IdentityHashMap<Build, Build> clonedBuilds = new IdentityHashMap<Build, Build>();
-
-        clone.buildsByBranchName = new HashMap<String, Build>();
-        for (Map.Entry<String, Build> buildByBranchName : buildsByBranchName.entrySet()) {
-            String branchName = buildByBranchName.getKey();
-            if (branchName == null) {
-                branchName = "";
-            }
-            Build build = buildByBranchName.getValue();
-            Build clonedBuild = clonedBuilds.get(build);
-            if (clonedBuild == null) {
-                clonedBuild = build.clone();
-                clonedBuilds.put(build, clonedBuild);
-            }
-            clone.buildsByBranchName.put(branchName, clonedBuild);
-        }
-
-        if (lastBuild != null) {
-            clone.lastBuild = clonedBuilds.get(lastBuild);
-            if (clone.lastBuild == null) {
-                clone.lastBuild = lastBuild.clone();
-                clonedBuilds.put(lastBuild, clone.lastBuild);
+        Map<String, Build> builds = getBuildsMap();
+        if (builds instanceof PersistentHashMap) {
+            clone.buildsByBranchName = ((PersistentHashMap<String, Build>) builds).clone();
+            clone.builtSha1s = builtSha1s == null ? null : builtSha1s.clone();
+        } else {
+            // replaced by a caller of the public field
+            clone.buildsByBranchName = new PersistentHashMap<String, Build>();
+            for (Map.Entry<String, Build> buildByBranchName : builds.entrySet()) {
+                clone.buildsByBranchName.put(fixNull(buildByBranchName.getKey()), buildByBranchName.getValue());
             }
+            clone.builtSha1s = null;
         }
+        clone.storedBuildNumber = 0;
+        clone.store = null;
 
         return clone;
     }
@@ -178,4 +302,79 @@ public class BuildData implements Action, Serializable, Cloneable {
     public String toString() {
         return super.toString() + "[buildsByBranchName=" + buildsByBranchName + ",lastBuild=" + lastBuild + "]";
     }
+
+    /**
+     * Persists stored build data as {@link #lastBuild} and {@link #storedBuildNumber} only, and other build data
+     * with all of {@link #buildsByBranchName}, as it always was.
+     */
+    public static final class ConverterImpl implements Converter {
+        private static final String LAST_BUILD = "lastBuild";
+        private static final String BUILDS_BY_BRANCH_NAME = "buildsByBranchName";
+        private static final String STORED_BUILD_NUMBER = "storedBuildNumber";
+
+        private final Mapper mapper;
+
+        public ConverterImpl(XStream2 xstream) {
+            this.mapper = xstream.getMapper();
+        }
+
+        public boolean canConvert(Class type) {
+            return type == BuildData.class;
+        }
+
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+            BuildData data = (BuildData) source;
+            if (data.storedBuildNumber > 0) {
+                writeField(writer, context, STORED_BUILD_NUMBER, data.storedBuildNumber, Integer.class);
+            } else {
+                // as the HashMap it always was
+                writeField(writer, context, BUILDS_BY_BRANCH_NAME, new HashMap<String, Build>(data.getBuildsMap()),
+                    Map.class);
+            }
+            writeField(writer, context, LAST_BUILD, data.lastBuild, Build.class);
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+            BuildData data = new BuildData();
+            data.buildsByBranchName = null;
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                String name = reader.getNodeName();
+                if (BUILDS_BY_BRANCH_NAME.equals(name)) {
+                    data.buildsByBranchName = (Map<String, Build>) context.convertAnother(data,
+                        typeOf(reader, Map.class));
+                } else if (LAST_BUILD.equals(name)) {
+                    data.lastBuild = (Build) context.convertAnother(data, typeOf(reader, Build.class));
+                } else if (STORED_BUILD_NUMBER.equals(name)) {
+                    data.storedBuildNumber = Integer.parseInt(reader.getValue());
+                }
+                reader.moveUp();
+            }
+            if (data.buildsByBranchName == null && data.storedBuildNumber == 0) {
+                data.buildsByBranchName = new HashMap<String, Build>();
+            }
+            return data.readResolve();
+        }
+
+        private void writeField(HierarchicalStreamWriter writer, MarshallingContext context, String name,
+                                Object value, Class<?> declaredType) {
+            if (value == null) {
+                return;
+            }
+            writer.startNode(name);
+            if (value.getClass() != mapper.defaultImplementationOf(declaredType)) {
+                writer.addAttribute(mapper.aliasForSystemAttribute("class"), mapper.serializedClass(value.getClass()));
+            }
+            context.convertAnother(value);
+            writer.endNode();
+        }
+
+        private Class<?> typeOf(HierarchicalStreamReader reader, Class<?> declaredType) {
+            String type = reader.getAttribute(mapper.aliasForSystemAttribute("class"));
+            return type != null ? mapper.realClass(type) : mapper.defaultImplementationOf(declaredType);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BuildData.class.getName());
 }
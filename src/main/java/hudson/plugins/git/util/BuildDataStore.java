@@ -0,0 +1,373 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.plugins.git.Branch;
+import hudson.plugins.git.Revision;
+import hudson.util.AtomicFileWriter;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Per-job store of the builds recorded in {@link BuildData}, so that build.xml does not have to carry the
+ * builds of every branch ever built.
+ * <p/>
+ * The store is an append-only log in the job directory with one line per branch and build, written only when
+ * a build changes the last build of a branch:
+ * <pre>
+ * &lt;recording build number&gt;:&lt;build number&gt; &lt;sha1&gt; &lt;result or -&gt; &lt;merged sha1 or -&gt;
+ *     &lt;branch&gt;
+ * </pre>
+ * Its size therefore grows with the number of builds plus the number of branches, not with their product. The
+ * builds by branch name as of a given build are replayed from the log: for each branch, the line recorded by the
+ * latest build up to the given one wins, so that builds completing out of order do not undo each other. The
+ * parsed log is only softly referenced, so that the stores of all jobs do not pin their history in memory.
+ * <p/>
+ * Next to the log, the store keeps the number of the latest build that recorded its build data, so that the
+ * build data of the job can be found without walking back through the build history.
+ */
+public final class BuildDataStore {
+
+    /**
+     * Name of the store in the job directory.
+     */
+    public static final String FILE_NAME = "gitBuildData.log";
+
+    /**
+     * Name of the file holding the number of the latest build, in the job directory.
+     */
+    public static final String LATEST_FILE_NAME = "gitBuildData.latest";
+
+    private static final String NONE = "-";
+
+    private static final Map<File, BuildDataStore> STORES = new HashMap<File, BuildDataStore>();
+
+    private final File file;
+
+    private final File latestFile;
+
+    /**
+     * Number of the latest build that recorded its build data, or -1 until read.
+     */
+    private int latestBuildNumber = -1;
+
+    /**
+     * The parsed log, loaded on first use and dropped when memory runs low.
+     */
+    private SoftReference<Log> log = new SoftReference<Log>(null);
+
+    BuildDataStore(File file) {
+        this.file = file;
+        this.latestFile = new File(file.getParentFile(), LATEST_FILE_NAME);
+    }
+
+    /**
+     * Returns the store of the given job.
+     *
+     * @param job job.
+     * @return store in the job directory.
+     */
+    public static BuildDataStore forJob(Job<?, ?> job) {
+        File file = new File(job.getRootDir(), FILE_NAME);
+        synchronized (STORES) {
+            BuildDataStore store = STORES.get(file);
+            if (store == null) {
+                store = new BuildDataStore(file);
+                STORES.put(file, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Records the builds by branch name of a build, writing only branches whose last build changed.
+     *
+     * @param buildNumber number of the build the builds by branch name belong to.
+     * @param buildsByBranchName builds by branch name as of that build.
+     * @throws IOException if the store cannot be read or written.
+     */
+    public synchronized void record(int buildNumber, Map<String, Build> buildsByBranchName) throws IOException {
+        Log log = load();
+        List<Record> added = new ArrayList<Record>();
+        for (Map.Entry<String, Build> entry : buildsByBranchName.entrySet()) {
+            Build build = entry.getValue();
+            if (build == null || build.revision == null || build.revision.getSha1() == null) {
+                continue;
+            }
+            Record record = new Record(entry.getKey(), buildNumber, build);
+            Record latest = log.latest.get(record.branch);
+            // a later build already recorded the branch, this build still needs its own line to replay
+            if (!record.sameBuild(latest) || latest.recordedBy > buildNumber) {
+                added.add(record);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+        try {
+            for (Record record : added) {
+                writer.write(record.toString());
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        for (Record record : added) {
+            log.add(record);
+        }
+        LOGGER.log(Level.FINE, "Recorded {0} branches of build #{1} in {2}",
+            new Object[]{added.size(), buildNumber, file});
+    }
+
+    /**
+     * Returns the number of the latest build that recorded its build data.
+     *
+     * @return build number, or zero if no build recorded its build data since the store was introduced.
+     */
+    public synchronized int getLatestBuildNumber() {
+        if (latestBuildNumber > 0 && !latestFile.exists()) {
+            // the job was deleted and created again
+            latestBuildNumber = -1;
+        }
+        if (latestBuildNumber < 0) {
+            latestBuildNumber = 0;
+            if (latestFile.exists()) {
+                try {
+                    latestBuildNumber = Integer.parseInt(Util.loadFile(latestFile).trim());
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not read " + latestFile, e);
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Ignoring malformed {0}", latestFile);
+                }
+            }
+        }
+        return latestBuildNumber;
+    }
+
+    /**
+     * Records that the given build attached its build data. The latest build number only moves forward, so that
+     * builds completing out of order do not hide the build data of a later build.
+     *
+     * @param buildNumber number of the build.
+     * @throws IOException if the latest build number cannot be written.
+     */
+    public synchronized void setLatestBuildNumber(int buildNumber) throws IOException {
+        if (buildNumber <= getLatestBuildNumber()) {
+            return;
+        }
+        latestFile.getParentFile().mkdirs();
+        AtomicFileWriter writer = new AtomicFileWriter(latestFile);
+        try {
+            writer.write(Integer.toString(buildNumber));
+            writer.write('\n');
+            writer.commit();
+        } finally {
+            writer.abort();
+        }
+        latestBuildNumber = buildNumber;
+    }
+
+    /**
+     * Replays the builds by branch name as of the given build.
+     *
+     * @param buildNumber number of the build.
+     * @return builds by branch name recorded by that build and the builds before it.
+     * @throws IOException if the store cannot be read.
+     */
+    public synchronized Map<String, Build> getBuildsByBranchName(int buildNumber) throws IOException {
+        Map<String, Record> asOf = new LinkedHashMap<String, Record>();
+        for (Record record : load().records) {
+            if (record.recordedBy <= buildNumber) {
+                Record previous = asOf.get(record.branch);
+                if (previous == null || previous.recordedBy <= record.recordedBy) {
+                    asOf.put(record.branch, record);
+                }
+            }
+        }
+
+        // branches built by the same build and revision share one Build, like BuildData#saveBuild does
+        Map<String, List<Record>> byBuild = new LinkedHashMap<String, List<Record>>();
+        for (Record record : asOf.values()) {
+            String key = record.buildNumber + " " + record.sha1.name();
+            List<Record> group = byBuild.get(key);
+            if (group == null) {
+                group = new ArrayList<Record>();
+                byBuild.put(key, group);
+            }
+            group.add(record);
+        }
+        Map<String, Build> buildsByBranchName = new HashMap<String, Build>();
+        for (List<Record> group : byBuild.values()) {
+            Record first = group.get(0);
+            List<Branch> branches = new ArrayList<Branch>(group.size());
+            for (Record record : group) {
+                branches.add(new Branch(record.branch, record.sha1));
+            }
+            Build build = new Build(new Revision(first.sha1, branches), first.buildNumber, first.result);
+            if (first.mergeSha1 != null) {
+                build.mergeRevision = new Revision(first.mergeSha1);
+            }
+            for (Record record : group) {
+                buildsByBranchName.put(record.branch, build);
+            }
+        }
+        return buildsByBranchName;
+    }
+
+    private Log load() throws IOException {
+        Log loaded = log.get();
+        if (loaded != null && (loaded.records.isEmpty() || file.exists())) {
+            return loaded;
+        }
+        // not loaded yet, dropped, or the job was deleted and created again
+        loaded = new Log();
+        BufferedReader reader;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        } catch (FileNotFoundException e) {
+            reader = null;
+        }
+        if (reader != null) {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Record record = Record.parse(line);
+                    if (record == null) {
+                        LOGGER.log(Level.WARNING, "Skipping malformed line \"{0}\" of {1}", new Object[]{line, file});
+                        continue;
+                    }
+                    loaded.add(record);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        log = new SoftReference<Log>(loaded);
+        return loaded;
+    }
+
+    /**
+     * The records of the log.
+     */
+    private static final class Log {
+        /**
+         * Every record in the order written.
+         */
+        private final List<Record> records = new ArrayList<Record>();
+
+        /**
+         * Record of each branch by the latest recording build.
+         */
+        private final Map<String, Record> latest = new HashMap<String, Record>();
+
+        private void add(Record record) {
+            records.add(record);
+            Record previous = latest.get(record.branch);
+            if (previous == null || previous.recordedBy <= record.recordedBy) {
+                latest.put(record.branch, record);
+            }
+        }
+    }
+
+    /**
+     * One line of the log.
+     */
+    private static final class Record {
+        private final String branch;
+        private final int recordedBy;
+        private final int buildNumber;
+        private final ObjectId sha1;
+        private final Result result;
+        private final ObjectId mergeSha1;
+
+        private Record(String branch, int recordedBy, int buildNumber, ObjectId sha1, Result result,
+                       ObjectId mergeSha1) {
+            this.branch = branch;
+            this.recordedBy = recordedBy;
+            this.buildNumber = buildNumber;
+            this.sha1 = sha1;
+            this.result = result;
+            this.mergeSha1 = mergeSha1;
+        }
+
+        private Record(String branch, int recordedBy, Build build) {
+            this(branch == null ? "" : branch, recordedBy, build.hudsonBuildNumber, build.revision.getSha1(),
+                build.hudsonBuildResult, build.mergeRevision == null ? null : build.mergeRevision.getSha1());
+        }
+
+        private boolean sameBuild(Record other) {
+            return other != null && buildNumber == other.buildNumber && sha1.equals(other.sha1)
+                && result == other.result;
+        }
+
+        private static Record parse(String line) {
+            String[] fields = line.split(" ", 5);
+            if (fields.length < 5) {
+                return null;
+            }
+            try {
+                // lines written before the recording build was logged were recorded by the build itself
+                int colon = fields[0].indexOf(':');
+                int buildNumber = Integer.parseInt(fields[0].substring(colon + 1));
+                int recordedBy = colon < 0 ? buildNumber : Integer.parseInt(fields[0].substring(0, colon));
+                return new Record(fields[4], recordedBy, buildNumber, ObjectId.fromString(fields[1]),
+                    NONE.equals(fields[2]) ? null : Result.fromString(fields[2]),
+                    NONE.equals(fields[3]) ? null : ObjectId.fromString(fields[3]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return recordedBy + ":" + buildNumber + " " + sha1.name() + " "
+                + (result == null ? NONE : result.toString()) + " "
+                + (mergeSha1 == null ? NONE : mergeSha1.name()) + " " + branch;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BuildDataStore.class.getName());
+}
@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Number of builds per built SHA1, whose copies share their structure.
+ * <p/>
+ * Like {@link PersistentHashMap}, the counts are kept in an immutable hash trie of 32-way nodes, so that
+ * {@link #clone()} only copies the reference to the root and {@link #add(AnyObjectId, int)} copies the nodes on
+ * the path to the changed count. The trie is indexed by the raw SHA1 words and the counts are kept as ints in
+ * {@link ObjectId} leaves, as in an {@link org.eclipse.jgit.lib.ObjectIdSubclassMap}, so that nothing is boxed.
+ * Not thread safe.
+ */
+final class BuiltSha1Index implements Cloneable {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private Node root;
+    private int size;
+
+    /**
+     * Returns the number of builds of the given SHA1.
+     *
+     * @param sha1 SHA1.
+     * @return count, zero if not built.
+     */
+    int get(AnyObjectId sha1) {
+        Count count = find(sha1);
+        return count == null ? 0 : count.count;
+    }
+
+    /**
+     * Adds to the number of builds of the given SHA1, dropping it when the count reaches zero.
+     *
+     * @param sha1 SHA1.
+     * @param delta number of builds to add, negative to remove builds.
+     */
+    void add(AnyObjectId sha1, int delta) {
+        Count previous = find(sha1);
+        int count = (previous == null ? 0 : previous.count) + delta;
+        if (count > 0) {
+            Count leaf = new Count(sha1, count, null);
+            root = root == null ? new Node(bit(leaf.hash, 0), new Object[]{leaf}) : root.put(leaf, 0);
+            if (previous == null) {
+                size++;
+            }
+        } else if (previous != null) {
+            root = root.remove(sha1, sha1.hashCode(), 0);
+            size--;
+        }
+    }
+
+    /**
+     * Returns the number of built SHA1s.
+     *
+     * @return size.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of this index, sharing all of its nodes.
+     *
+     * @return copy of this index.
+     */
+    @Override
+    public BuiltSha1Index clone() {
+        try {
+            return (BuiltSha1Index) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException("Error cloning BuiltSha1Index", e);
+        }
+    }
+
+    private Count find(AnyObjectId sha1) {
+        // the words of a SHA1 are uniformly distributed already
+        int hash = sha1.hashCode();
+        Node node = root;
+        int shift = 0;
+        while (node != null) {
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[node.index(bit)];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+                shift += BITS;
+            } else {
+                Count count = (Count) slot;
+                if (count.hash != hash) {
+                    return null;
+                }
+                for (; count != null; count = count.next) {
+                    if (AnyObjectId.equals(count, sha1)) {
+                        return count;
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Node of the trie. Holds a slot for each bit set in its bitmap; a slot is a {@link Count} or a child node.
+     */
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        private Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private Node put(Count leaf, int shift) {
+            int bit = bit(leaf.hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                return new Node(bitmap | bit, newSlots);
+            }
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node) slot).put(leaf, shift + BITS);
+            } else {
+                Count existing = (Count) slot;
+                if (existing.hash == leaf.hash) {
+                    newSlot = existing.with(leaf);
+                } else {
+                    newSlot = split(existing, leaf, shift + BITS);
+                }
+            }
+            return with(index, newSlot);
+        }
+
+        private Node remove(AnyObjectId sha1, int hash, int shift) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node) slot).remove(sha1, hash, shift + BITS);
+            } else {
+                newSlot = ((Count) slot).without(sha1);
+            }
+            if (newSlot != null) {
+                return with(index, newSlot);
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, newSlots.length - index);
+            return new Node(bitmap & ~bit, newSlots);
+        }
+
+        private Node with(int index, Object slot) {
+            Object[] newSlots = slots.clone();
+            newSlots[index] = slot;
+            return new Node(bitmap, newSlots);
+        }
+
+        private static Node split(Count a, Count b, int shift) {
+            int bitA = bit(a.hash, shift);
+            int bitB = bit(b.hash, shift);
+            if (bitA == bitB) {
+                return new Node(bitA, new Object[]{split(a, b, shift + BITS)});
+            }
+            boolean aFirst = ((a.hash >>> shift) & MASK) < ((b.hash >>> shift) & MASK);
+            return new Node(bitA | bitB, aFirst ? new Object[]{a, b} : new Object[]{b, a});
+        }
+    }
+
+    /**
+     * Count of a SHA1, chained to the counts of the other SHA1s with the same hash.
+     */
+    private static final class Count extends ObjectId {
+        private final int hash;
+        private final int count;
+        private final Count next;
+
+        private Count(AnyObjectId sha1, int count, Count next) {
+            super(sha1);
+            this.hash = sha1.hashCode();
+            this.count = count;
+            this.next = next;
+        }
+
+        private Count with(Count leaf) {
+            if (AnyObjectId.equals(this, leaf)) {
+                return new Count(this, leaf.count, next);
+            }
+            return new Count(this, count, next == null ? leaf : next.with(leaf));
+        }
+
+        private Count without(AnyObjectId sha1) {
+            if (AnyObjectId.equals(this, sha1)) {
+                return next;
+            }
+            return next == null ? this : new Count(this, count, next.without(sha1));
+        }
+    }
+}
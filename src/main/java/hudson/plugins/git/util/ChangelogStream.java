@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import hudson.remoting.RemoteOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Streams a changelog written on a node straight into the changelog file of the build on the master.
+ * <p/>
+ * The master creates the stream with {@link #create(File, boolean, boolean)} and hands it to a
+ * {@link hudson.FilePath.FileCallable}; the callable writes to {@link #open()} and closes the returned stream, or
+ * calls {@link #closeIfUnused()} when it records no changelog.
+ * Data is optionally deflated on the node and inflated on the master, so neither side holds more than a
+ * buffer of the changelog in memory, whatever the size of the history.
+ */
+public final class ChangelogStream implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Time in milliseconds the master waits for the node to finish writing once the callable has returned.
+     */
+    public static final long CLOSE_TIMEOUT = Long.getLong(ChangelogStream.class.getName() + ".closeTimeout",
+        60 * 1000L);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RemoteOutputStream out;
+    private final boolean compressed;
+    private final transient Sink sink;
+
+    /**
+     * Whether {@link #open()} was called on this side of the channel.
+     */
+    private transient boolean opened;
+
+    private ChangelogStream(Sink sink, boolean compressed) {
+        this.sink = sink;
+        this.compressed = compressed;
+        this.out = new RemoteOutputStream(sink);
+    }
+
+    /**
+     * Creates a stream into the given changelog file. Must be called on the master.
+     *
+     * @param changelogFile changelog file of the build.
+     * @param append true to append to the file, false to replace it.
+     * @param compressed true to deflate the data on its way from the node.
+     * @return changelog stream.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static ChangelogStream create(File changelogFile, boolean append, boolean compressed)
+        throws IOException {
+        OutputStream file = new FileOutputStream(changelogFile, append);
+        return new ChangelogStream(new Sink(compressed ? new InflaterOutputStream(file) : file), compressed);
+    }
+
+    /**
+     * Opens the stream to write the changelog to. Must be called on the node, at most once, and the
+     * returned stream must be closed.
+     *
+     * @return output stream.
+     */
+    public OutputStream open() {
+        opened = true;
+        OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+        return compressed ? new DeflaterOutputStream(buffered) : buffered;
+    }
+
+    /**
+     * Closes the stream if it was never opened, e.g. because the build failed before the changelog was recorded,
+     * so that {@link #await()} does not wait for it. Must be called on the node before the callable returns.
+     *
+     * @throws IOException if the stream cannot be closed.
+     */
+    public void closeIfUnused() throws IOException {
+        if (!opened) {
+            opened = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Waits until everything written on the node has reached the changelog file, and closes the file.
+     * Must be called on the master once the callable has returned.
+     *
+     * @throws IOException if the file cannot be closed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void await() throws IOException, InterruptedException {
+        if (!sink.closed.await(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            LOGGER.warning("Changelog stream was not closed within " + CLOSE_TIMEOUT + "ms, the changelog may be "
+                + "incomplete");
+        }
+        sink.close();
+    }
+
+    /**
+     * Closes the changelog file without waiting for the node. Must be called on the master instead of
+     * {@link #await()} when the callable failed.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    public void abort() throws IOException {
+        sink.close();
+    }
+
+    /**
+     * Master side end of the stream, which records when the node closed it.
+     */
+    private static final class Sink extends OutputStream {
+        private final OutputStream delegate;
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private Sink(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed.getCount() == 0) {
+                return;
+            }
+            try {
+                delegate.close();
+            } finally {
+                closed.countDown();
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ChangelogStream.class.getName());
+}
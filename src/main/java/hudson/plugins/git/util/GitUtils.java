@@ -24,17 +24,21 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 
 public class GitUtils {
@@ -102,8 +106,8 @@ public class GitUtils {
     /**
      * Return a list of 'tip' branches (I.E. branches that aren't included entirely within another branch).
      *
-     * @param git
-     * @return
+     * @param revisions candidate revisions.
+     * @return revisions that are not an ancestor of any other candidate.
      */
     public Collection<Revision> filterTipBranches(Collection<Revision> revisions) {
         // If we have 3 branches that we might want to build
@@ -112,6 +116,31 @@ public class GitUtils {
 
         // we only want (B) and (C), as (A) is an ancestor (old).
 
+        List<ObjectId> sha1s = new ArrayList<ObjectId>(revisions.size());
+        for (Revision r : revisions) {
+            sha1s.add(r.getSha1());
+        }
+        Set<ObjectId> tips;
+        try {
+            tips = git.getTipCommits(sha1s);
+        } catch (GitException e) {
+            LOGGER.log(Level.FINE, "filterTipBranches: falling back to pairwise merge-base", e);
+            return filterTipBranchesByMergeBase(revisions);
+        }
+
+        List<Revision> l = new ArrayList<Revision>(revisions.size());
+        Set<ObjectId> seen = new HashSet<ObjectId>();
+        for (Revision r : revisions) {
+            if (!tips.contains(r.getSha1())) {
+                LOGGER.fine("filterTipBranches: " + r + " is subsumed by another revision");
+            } else if (seen.add(r.getSha1())) {
+                l.add(r);
+            }
+        }
+        return l;
+    }
+
+    private Collection<Revision> filterTipBranchesByMergeBase(Collection<Revision> revisions) {
         List<Revision> l = new ArrayList<Revision>(revisions);
 
         OUTER:
@@ -314,6 +343,91 @@ public class GitUtils {
         return returnNames;
     }
 
+    /**
+     * Derives the refspecs needed to fetch the given branches from a remote repository. Literal branch names
+     * become exact refspecs, wildcard names become prefix refspecs for the directory before the first wildcard.
+     * The configured refspec is returned unchanged if it is not the default one mapping all heads to remote
+     * tracking branches of the repository, or if any branch applying to the repository cannot be narrowed. Names
+     * that cannot be branches, like SHA1s and fully qualified refs, are not narrowed; since tags cannot be told
+     * from branches by their name, use {@link #isNarrowedToHeads(List, Collection)} against the heads of the
+     * remote when a narrowed fetch fails.
+     *
+     * @param remoteName name of the remote repository.
+     * @param refSpec configured refspec of the remote repository.
+     * @param branchNames branch names as configured in {@link BranchSpec}s, parameters
+     * already expanded.
+     * @return refspecs to fetch, never empty.
+     */
+    public static List<RefSpec> narrowRefSpecs(String remoteName, RefSpec refSpec, Collection<String> branchNames) {
+        List<RefSpec> configured = Collections.singletonList(refSpec);
+        String trackingRefs = Constants.R_REMOTES + remoteName + "/";
+        if (!refSpec.isWildcard() || !(Constants.R_HEADS + "*").equals(refSpec.getSource())
+            || !(trackingRefs + "*").equals(refSpec.getDestination())) {
+            return configured;
+        }
+
+        Set<String> patterns = new LinkedHashSet<String>();
+        for (String name : branchNames) {
+            if (ObjectId.isId(name) || name.startsWith(Constants.R_REFS)) {
+                return configured;
+            }
+            // unqualified names match the branch in every repository, see BranchSpec
+            if (!name.contains("**") && !name.contains("/")) {
+                name = "*/" + name;
+            }
+            int slash = name.indexOf('/');
+            if (slash < 0) {
+                return configured;
+            }
+            String repository = name.substring(0, slash);
+            if (!repository.equals("*") && !repository.equals(remoteName)) {
+                if (repository.contains("*")) {
+                    return configured;
+                }
+                // the branch belongs to another repository
+                continue;
+            }
+            String branch = name.substring(slash + 1);
+            int wildcard = branch.indexOf('*');
+            if (wildcard < 0) {
+                patterns.add(branch);
+            } else {
+                int directory = branch.lastIndexOf('/', wildcard);
+                if (directory < 0) {
+                    return configured;
+                }
+                patterns.add(branch.substring(0, directory + 1) + "*");
+            }
+        }
+        if (patterns.isEmpty()) {
+            return configured;
+        }
+
+        List<RefSpec> refSpecs = new ArrayList<RefSpec>();
+        for (String pattern : patterns) {
+            refSpecs.add(new RefSpec((refSpec.isForceUpdate() ? "+" : "") + Constants.R_HEADS + pattern + ":"
+                + trackingRefs + pattern));
+        }
+        return refSpecs;
+    }
+
+    /**
+     * Tells whether the literal refspecs among the given ones, as returned by
+     * {@link #narrowRefSpecs(String, RefSpec, Collection)}, only name heads that exist in the remote repository.
+     *
+     * @param refSpecs refspecs to fetch.
+     * @param remoteHeads full names of the heads of the remote repository.
+     * @return false if a literal refspec names a head the remote repository does not have.
+     */
+    public static boolean isNarrowedToHeads(List<RefSpec> refSpecs, Collection<String> remoteHeads) {
+        for (RefSpec refSpec : refSpecs) {
+            if (!refSpec.isWildcard() && !remoteHeads.contains(refSpec.getSource())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Verifies whether array of the repository Urls is empty.
      *
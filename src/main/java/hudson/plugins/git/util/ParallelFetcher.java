@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitException;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent fetches, e.g. from several remotes or into several target directories, on a bounded
+ * node-local thread pool.
+ * <p/>
+ * The output of each fetch is buffered and copied to the build log in the order the fetches were given, so the
+ * log reads as if they had run one after the other. A fetch that runs longer than the timeout is interrupted,
+ * which kills its git process. Fetches that fail for other reasons are retried one at a time, since concurrent
+ * fetches into the same repository may compete for the same ref locks, e.g. when two remotes carry the same tag.
+ */
+public final class ParallelFetcher {
+
+    /**
+     * Maximum number of fetches running at the same time on this node. One or less fetches sequentially.
+     */
+    public static final int THREADS = Integer.getInteger(ParallelFetcher.class.getName() + ".threads", 4);
+
+    /**
+     * Time in minutes after which a parallel fetch is interrupted. Zero or less waits forever.
+     */
+    public static final long TIMEOUT = Long.getLong(ParallelFetcher.class.getName() + ".timeout", 30L);
+
+    private static ExecutorService executor;
+    private static ScheduledExecutorService watchdog;
+
+    private ParallelFetcher() {
+    }
+
+    /**
+     * A single fetch.
+     */
+    public interface Fetch {
+
+        /**
+         * Returns a description of the fetch for the build log.
+         *
+         * @return description.
+         */
+        String getName();
+
+        /**
+         * Fetches, reporting problems to the given listener.
+         *
+         * @param listener listener of this fetch.
+         * @return true if the fetch succeeded.
+         */
+        boolean fetch(TaskListener listener);
+    }
+
+    /**
+     * Runs the given fetches.
+     *
+     * @param fetches fetches to run.
+     * @param listener build listener.
+     * @return the outcome of each fetch, in the given order.
+     * @throws GitException if interrupted.
+     */
+    public static boolean[] fetchAll(List<? extends Fetch> fetches, TaskListener listener) throws GitException {
+        boolean[] fetched = new boolean[fetches.size()];
+        if (fetches.size() <= 1 || THREADS <= 1) {
+            for (int i = 0; i < fetches.size(); i++) {
+                fetched[i] = fetches.get(i).fetch(listener);
+            }
+            return fetched;
+        }
+
+        List<ByteArrayOutputStream> logs = new ArrayList<ByteArrayOutputStream>(fetches.size());
+        List<AtomicBoolean> timeouts = new ArrayList<AtomicBoolean>(fetches.size());
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(fetches.size());
+        for (Fetch fetch : fetches) {
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            AtomicBoolean timedOut = new AtomicBoolean();
+            logs.add(log);
+            timeouts.add(timedOut);
+            futures.add(getExecutor().submit(new Task(fetch, new StreamTaskListener(log), timedOut)));
+        }
+        try {
+            for (int i = 0; i < fetches.size(); i++) {
+                try {
+                    fetched[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace(listener.error("Fetch from " + fetches.get(i).getName()
+                        + " failed"));
+                }
+                byte[] log = logs.get(i).toByteArray();
+                listener.getLogger().write(log, 0, log.length);
+                if (timeouts.get(i).get()) {
+                    listener.error("Fetch from " + fetches.get(i).getName() + " timed out after " + TIMEOUT
+                        + " minutes");
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<Boolean> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new GitException("Interrupted while fetching", e);
+        }
+
+        for (int i = 0; i < fetches.size(); i++) {
+            if (!fetched[i] && !timeouts.get(i).get()) {
+                listener.getLogger().println("Retrying fetch from " + fetches.get(i).getName());
+                fetched[i] = fetches.get(i).fetch(listener);
+            }
+        }
+        return fetched;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS, new DaemonThreadFactory("Git fetch"));
+            watchdog = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Git fetch watchdog"));
+        }
+        return executor;
+    }
+
+    private static final class Task implements Callable<Boolean> {
+        private final Fetch fetch;
+        private final TaskListener listener;
+        private final AtomicBoolean timedOut;
+
+        private Task(Fetch fetch, TaskListener listener, AtomicBoolean timedOut) {
+            this.fetch = fetch;
+            this.listener = listener;
+            this.timedOut = timedOut;
+        }
+
+        public Boolean call() {
+            final Thread thread = Thread.currentThread();
+            ScheduledFuture<?> alarm = null;
+            if (TIMEOUT > 0) {
+                alarm = watchdog.schedule(new Runnable() {
+                    public void run() {
+                        timedOut.set(true);
+                        thread.interrupt();
+                    }
+                }, TIMEOUT, TimeUnit.MINUTES);
+            }
+            try {
+                return fetch.fetch(listener);
+            } finally {
+                if (alarm != null) {
+                    alarm.cancel(false);
+                }
+                // do not leak a late interrupt into the next fetch run by this thread
+                Thread.interrupted();
+            }
+        }
+    }
+
+    static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Hash map whose copies share their structure.
+ * <p/>
+ * The entries are kept in an immutable hash trie of 32-way nodes. {@link #clone()} only copies the reference to
+ * the root, and {@link #put(Object, Object)} and {@link #remove(Object)} copy the nodes on the path to the changed
+ * entry, so a copy that changes a few entries of a large map costs a few small arrays instead of a whole new map.
+ * Like {@link java.util.HashMap} it permits null keys and values and is not thread safe. Entries are immutable.
+ *
+ * @param <K> type of the keys.
+ * @param <V> type of the values.
+ */
+public class PersistentHashMap<K, V> extends AbstractMap<K, V> implements Cloneable, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private transient Node root;
+    private transient int size;
+
+    public PersistentHashMap() {
+    }
+
+    public PersistentHashMap(Map<? extends K, ? extends V> map) {
+        putAll(map);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public V get(Object key) {
+        Leaf<K, V> leaf = find(key);
+        return leaf == null ? null : leaf.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int hash = hash(key);
+        Leaf<K, V> previous = find(key, hash);
+        if (previous != null && previous.value == value) {
+            return value;
+        }
+        Leaf<K, V> leaf = new Leaf<K, V>(hash, key, value, null);
+        root = root == null ? new Node(bit(hash, 0), new Object[]{leaf}) : root.put(leaf, 0);
+        if (previous == null) {
+            size++;
+            return null;
+        }
+        return previous.value;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int hash = hash(key);
+        Leaf<K, V> previous = find(key, hash);
+        if (previous == null) {
+            return null;
+        }
+        root = root.remove(key, hash, 0);
+        size--;
+        return previous.value;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Entry)) {
+                    return false;
+                }
+                Entry<?, ?> entry = (Entry<?, ?>) o;
+                Leaf<K, V> leaf = find(entry.getKey());
+                return leaf != null && eq(leaf.value, entry.getValue());
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if (!contains(o)) {
+                    return false;
+                }
+                PersistentHashMap.this.remove(((Entry<?, ?>) o).getKey());
+                return true;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                PersistentHashMap.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of this map, sharing all of its nodes.
+     *
+     * @return copy of this map.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentHashMap<K, V> clone() {
+        try {
+            return (PersistentHashMap<K, V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException("Error cloning PersistentHashMap", e);
+        }
+    }
+
+    private Leaf<K, V> find(Object key) {
+        return find(key, hash(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Leaf<K, V> find(Object key, int hash) {
+        Node node = root;
+        int shift = 0;
+        while (node != null) {
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[node.index(bit)];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+                shift += BITS;
+            } else {
+                Leaf<K, V> leaf = (Leaf<K, V>) slot;
+                if (leaf.hash != hash) {
+                    return null;
+                }
+                for (; leaf != null; leaf = leaf.next) {
+                    if (eq(leaf.key, key)) {
+                        return leaf;
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (Entry<K, V> entry : entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            K key = (K) in.readObject();
+            V value = (V) in.readObject();
+            put(key, value);
+        }
+    }
+
+    private static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        // spread the bits like HashMap does, the trie consumes the low bits first
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Node of the trie. Holds a slot for each bit set in its bitmap; a slot is a {@link Leaf} or a child node.
+     */
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        private Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private Node put(Leaf<?, ?> leaf, int shift) {
+            int bit = bit(leaf.hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                return new Node(bitmap | bit, newSlots);
+            }
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node) slot).put(leaf, shift + BITS);
+            } else {
+                Leaf<?, ?> existing = (Leaf<?, ?>) slot;
+                if (existing.hash == leaf.hash) {
+                    newSlot = existing.with(leaf);
+                } else {
+                    newSlot = split(existing, leaf, shift + BITS);
+                }
+            }
+            return with(index, newSlot);
+        }
+
+        private Node remove(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node) slot).remove(key, hash, shift + BITS);
+            } else {
+                newSlot = ((Leaf<?, ?>) slot).without(key);
+            }
+            if (newSlot != null) {
+                return with(index, newSlot);
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, newSlots.length - index);
+            return new Node(bitmap & ~bit, newSlots);
+        }
+
+        private Node with(int index, Object slot) {
+            Object[] newSlots = slots.clone();
+            newSlots[index] = slot;
+            return new Node(bitmap, newSlots);
+        }
+
+        private static Node split(Leaf<?, ?> a, Leaf<?, ?> b, int shift) {
+            int bitA = bit(a.hash, shift);
+            int bitB = bit(b.hash, shift);
+            if (bitA == bitB) {
+                return new Node(bitA, new Object[]{split(a, b, shift + BITS)});
+            }
+            boolean aFirst = ((a.hash >>> shift) & MASK) < ((b.hash >>> shift) & MASK);
+            return new Node(bitA | bitB, aFirst ? new Object[]{a, b} : new Object[]{b, a});
+        }
+    }
+
+    /**
+     * Entry of the map, chained to the other entries whose keys have the same hash.
+     */
+    private static final class Leaf<K, V> implements Entry<K, V> {
+        private final int hash;
+        private final K key;
+        private final V value;
+        private final Leaf<K, V> next;
+
+        private Leaf(int hash, K key, V value, Leaf<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @SuppressWarnings("unchecked")
+        private Leaf<K, V> with(Leaf<?, ?> leaf) {
+            if (eq(key, leaf.key)) {
+                return new Leaf<K, V>(hash, key, (V) leaf.value, next);
+            }
+            return new Leaf<K, V>(hash, key, value, next == null ? (Leaf<K, V>) leaf : next.with(leaf));
+        }
+
+        private Leaf<K, V> without(Object key) {
+            if (eq(this.key, key)) {
+                return next;
+            }
+            return next == null ? this : new Leaf<K, V>(hash, this.key, value, next.without(key));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            return eq(key, entry.getKey()) && eq(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * Iterates over a snapshot of the trie, depth first.
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        private final Object[][] slots = new Object[32 / BITS + 2][];
+        private final int[] indexes = new int[slots.length];
+        private int depth = -1;
+        private Leaf<K, V> next;
+        private Leaf<K, V> last;
+
+        private EntryIterator() {
+            if (root != null) {
+                depth = 0;
+                slots[0] = root.slots;
+            }
+            advance();
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = next.next;
+            if (next == null) {
+                advance();
+            }
+            return last;
+        }
+
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            PersistentHashMap.this.remove(last.key);
+            last = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            while (depth >= 0) {
+                if (indexes[depth] == slots[depth].length) {
+                    depth--;
+                    continue;
+                }
+                Object slot = slots[depth][indexes[depth]++];
+                if (slot instanceof Node) {
+                    depth++;
+                    slots[depth] = ((Node) slot).slots;
+                    indexes[depth] = 0;
+                } else {
+                    next = (Leaf<K, V>) slot;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import hudson.plugins.git.GitStatus;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * Master-wide history of how often the repositories of each job change, used by adaptive polling.
+ * <p/>
+ * Every poll that runs records whether it found changes. The polling interval of a job doubles after each poll
+ * that found none and halves after each poll that found some, within {@link #MIN_INTERVAL} and
+ * {@link #MAX_INTERVAL}. Polls triggered before the interval has elapsed are skipped. {@link GitStatus} makes the
+ * jobs of a repository due again when a push is notified, so that busy repositories can rely on notifications.
+ * <p/>
+ * The history is kept in memory. It starts over at the minimum interval after a restart, and when the repositories
+ * or branches of a job change.
+ */
+public final class PollingBackoff {
+
+    /**
+     * Shortest polling interval in milliseconds.
+     */
+    public static final long MIN_INTERVAL = Long.getLong(PollingBackoff.class.getName() + ".minInterval", 60000L);
+
+    /**
+     * Longest polling interval in milliseconds.
+     */
+    public static final long MAX_INTERVAL = Long.getLong(PollingBackoff.class.getName() + ".maxInterval", 3600000L);
+
+    private static final PollingBackoff INSTANCE = new PollingBackoff(MIN_INTERVAL, MAX_INTERVAL);
+
+    private final long minInterval;
+    private final long maxInterval;
+
+    /**
+     * Histories by job name.
+     */
+    private final Map<String, History> histories = new HashMap<String, History>();
+
+    PollingBackoff(long minInterval, long maxInterval) {
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+    }
+
+    /**
+     * Returns the history shared by all jobs of this Hudson instance.
+     *
+     * @return master-wide history.
+     */
+    public static PollingBackoff getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Tells whether a job is due for polling.
+     *
+     * @param job full name of the job.
+     * @param signature repositories and branches the job polls.
+     * @param now current time in milliseconds.
+     * @return true if the job has not been polled within its interval.
+     */
+    public synchronized boolean isDue(String job, String signature, long now) {
+        History history = histories.get(job);
+        return history == null || !history.signature.equals(signature) || now - history.lastPoll >= history.interval;
+    }
+
+    /**
+     * Records the outcome of a poll of a job and adapts its interval.
+     *
+     * @param job full name of the job.
+     * @param signature repositories and branches the job polls.
+     * @param uris repositories the job polls.
+     * @param changed whether the poll found changes.
+     * @param now current time in milliseconds.
+     */
+    public synchronized void polled(String job, String signature, Collection<URIish> uris, boolean changed,
+                                    long now) {
+        History history = histories.get(job);
+        if (history == null || !history.signature.equals(signature)) {
+            history = new History(signature, uris, minInterval);
+            histories.put(job, history);
+        }
+        history.lastPoll = now;
+        if (changed) {
+            history.interval = Math.max(minInterval, history.interval / 2);
+        } else {
+            history.interval = Math.min(maxInterval, history.interval * 2);
+        }
+    }
+
+    /**
+     * Returns the polling interval learned for a job.
+     *
+     * @param job full name of the job.
+     * @return interval in milliseconds.
+     */
+    public synchronized long getInterval(String job) {
+        History history = histories.get(job);
+        return history == null ? minInterval : history.interval;
+    }
+
+    /**
+     * Makes every job polling a repository due, since it changed.
+     *
+     * @param uri repository that changed.
+     * @see GitStatus#looselyMatches(URIish, URIish)
+     */
+    public synchronized void invalidate(URIish uri) {
+        for (History history : histories.values()) {
+            for (URIish polled : history.uris) {
+                if (GitStatus.looselyMatches(uri, polled)) {
+                    history.lastPoll = 0;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static final class History {
+        private final String signature;
+        private final List<URIish> uris;
+        private long interval;
+        private long lastPoll;
+
+        private History(String signature, Collection<URIish> uris, long interval) {
+            this.signature = signature;
+            this.uris = new ArrayList<URIish>(uris);
+            this.interval = interval;
+        }
+    }
+}
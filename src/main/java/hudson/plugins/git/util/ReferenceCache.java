@@ -0,0 +1,337 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitAPI;
+import hudson.plugins.git.GitException;
+import hudson.plugins.git.GitStatus;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * Node-local cache of bare mirrors of remote repositories, used as object stores shared by all workspaces of a node.
+ * <p/>
+ * Workspaces are linked to the mirror of their remote through {@code objects/info/alternates}, so that cloning and
+ * fetching only transfers and stores objects the mirror does not have yet. Each mirror is updated under a lock held
+ * per URL, both within this JVM and across processes sharing the cache directory.
+ * <p/>
+ * Workspaces borrow objects from the mirrors, so mirrors are never garbage collected and must not be deleted while
+ * workspaces still refer to them.
+ * <p/>
+ * Polling reads the branches of a remote from its mirror, so that all jobs polling the same repository on a node
+ * share one fetch per polling cycle. {@link GitStatus} counts the pushes notified to the master for each
+ * repository; a poll passes that count along to the node, which fetches again if the mirror was last updated for
+ * another count.
+ */
+public final class ReferenceCache {
+
+    /**
+     * Directory holding the mirrors.
+     */
+    public static final File ROOT = new File(System.getProperty(ReferenceCache.class.getName() + ".root",
+        new File(System.getProperty("user.home"), ".hudson-git-cache").getPath()));
+
+    /**
+     * Time in milliseconds during which a freshly updated mirror is not fetched into again.
+     */
+    public static final long MIN_UPDATE_INTERVAL = Long.getLong(
+        ReferenceCache.class.getName() + ".minUpdateInterval", 10000L);
+
+    private static final ReferenceCache INSTANCE = new ReferenceCache(ROOT);
+
+    private final File root;
+
+    /**
+     * Per URL locks, which also remember when the mirror was last updated.
+     */
+    private final Map<String, MirrorLock> locks = new HashMap<String, MirrorLock>();
+
+    /**
+     * Number of the last notification of each notified repository URL.
+     */
+    private final Map<String, Long> notifications = new HashMap<String, Long>();
+
+    private long lastNotification;
+
+    ReferenceCache(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the cache of this node.
+     *
+     * @return node-local cache.
+     */
+    public static ReferenceCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the mirror directory of the given remote repository.
+     *
+     * @param url remote repository URL.
+     * @return bare repository directory, which may not exist yet.
+     */
+    public File getMirror(String url) {
+        return new File(root, Util.getDigestOf(url) + ".git");
+    }
+
+    /**
+     * Creates or updates the mirror of the given remote repository.
+     *
+     * @param gitExe git executable.
+     * @param url remote repository URL.
+     * @param listener listener.
+     * @param environment environment.
+     * @return bare repository directory.
+     * @throws GitException if the mirror cannot be updated.
+     */
+    public File update(String gitExe, String url, TaskListener listener, EnvVars environment) throws GitException {
+        return update(gitExe, url, listener, environment, -1);
+    }
+
+    /**
+     * Creates or updates the mirror of the given remote repository, unless it was updated recently for the same
+     * notification.
+     *
+     * @param gitExe git executable.
+     * @param url remote repository URL.
+     * @param listener listener.
+     * @param environment environment.
+     * @param notification number of the last notification of the repository from {@link #getNotification(String)},
+     * or -1 to accept any recent update.
+     * @return bare repository directory.
+     * @throws GitException if the mirror cannot be updated.
+     */
+    public File update(String gitExe, String url, TaskListener listener, EnvVars environment, long notification)
+        throws GitException {
+        File mirror = getMirror(url);
+        MirrorLock lock = lockFor(url);
+        synchronized (lock) {
+            long started = System.currentTimeMillis();
+            if (started - lock.lastUpdate < MIN_UPDATE_INTERVAL
+                && (notification < 0 || notification == lock.notification)) {
+                return mirror;
+            }
+            FileLock fileLock = null;
+            RandomAccessFile lockFile = null;
+            try {
+                root.mkdirs();
+                lockFile = new RandomAccessFile(new File(root, mirror.getName() + ".lock"), "rw");
+                fileLock = lockFile.getChannel().lock();
+
+                GitAPI git = new GitAPI(gitExe, new FilePath(mirror), listener, environment);
+                try {
+                    if (!new File(mirror, "objects").isDirectory()) {
+                        listener.getLogger().println("Creating the reference repository " + mirror + " for " + url);
+                        mirror.mkdirs();
+                        git.launchCommand("init", "--bare");
+                        // workspaces borrow objects from the mirror, so nothing may ever be pruned
+                        git.launchCommand("config", "gc.auto", "0");
+                    }
+                    listener.getLogger().println("Updating the reference repository " + mirror + " from " + url);
+                    git.launchCommand("fetch", "--prune", url, "+refs/heads/*:refs/heads/*",
+                        "+refs/tags/*:refs/tags/*");
+                } finally {
+                    git.close();
+                }
+                // pushes during the fetch may not be in the mirror yet
+                lock.lastUpdate = started;
+                if (notification >= 0) {
+                    lock.notification = notification;
+                }
+                return mirror;
+            } catch (IOException e) {
+                throw new GitException("Could not lock the reference repository " + mirror, e);
+            } finally {
+                try {
+                    if (fileLock != null) {
+                        fileLock.release();
+                    }
+                    if (lockFile != null) {
+                        lockFile.close();
+                    }
+                } catch (IOException e) {
+                    listener.error("Could not unlock the reference repository " + mirror);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the branches of a remote repository as found in its mirror, updating the mirror first unless it was
+     * updated recently for the same notification.
+     *
+     * @param gitExe git executable.
+     * @param url remote repository URL.
+     * @param listener listener.
+     * @param environment environment.
+     * @param notification number of the last notification of the repository from {@link #getNotification(String)}
+     * on the master.
+     * @return head commits keyed by full ref name.
+     * @throws GitException if the mirror cannot be updated or read.
+     */
+    public Map<String, ObjectId> getHeads(String gitExe, String url, TaskListener listener, EnvVars environment,
+                                          long notification) throws GitException {
+        File mirror = update(gitExe, url, listener, environment, notification);
+        Map<String, ObjectId> heads = new HashMap<String, ObjectId>();
+        try {
+            Repository repository = RepositoryPool.getInstance().acquire(mirror);
+            try {
+                for (Ref ref : repository.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+                    if (ref.getObjectId() != null) {
+                        heads.put(ref.getName(), ref.getObjectId());
+                    }
+                }
+            } finally {
+                RepositoryPool.getInstance().release(repository);
+            }
+        } catch (IOException e) {
+            throw new GitException("Could not read the branches of the reference repository " + mirror, e);
+        }
+        return heads;
+    }
+
+    /**
+     * Records that a repository changed, so that polls of it fetch into the mirrors again. Must be called on the
+     * master.
+     *
+     * @param uri repository that changed.
+     */
+    public synchronized void invalidate(URIish uri) {
+        notifications.put(uri.toString(), ++lastNotification);
+    }
+
+    /**
+     * Returns the number of the last notification of a repository. Must be called on the master, which passes it
+     * to the node that polls the repository.
+     *
+     * @param url remote repository URL.
+     * @return notification number, or zero if the repository was never notified.
+     * @see GitStatus#looselyMatches(URIish, URIish)
+     */
+    public synchronized long getNotification(String url) {
+        URIish uri;
+        try {
+            uri = new URIish(url);
+        } catch (URISyntaxException e) {
+            return 0;
+        }
+        long notification = 0;
+        for (Map.Entry<String, Long> entry : notifications.entrySet()) {
+            try {
+                if (entry.getValue() > notification && GitStatus.looselyMatches(new URIish(entry.getKey()), uri)) {
+                    notification = entry.getValue();
+                }
+            } catch (URISyntaxException e) {
+                // recorded from a parsed URI
+            }
+        }
+        return notification;
+    }
+
+    /**
+     * Makes a repository borrow objects from a mirror, unless it already does. Must be done before the
+     * repository is opened, since JGit reads the alternates only once.
+     *
+     * @param gitDir .git directory of the repository.
+     * @param mirror bare mirror directory.
+     * @throws IOException if the alternates file cannot be written.
+     */
+    public static void link(File gitDir, File mirror) throws IOException {
+        if (isLinked(gitDir, mirror)) {
+            return;
+        }
+        File alternates = new File(gitDir, "objects/info/alternates");
+        alternates.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(alternates, true), "UTF-8");
+        try {
+            writer.write(new File(mirror, "objects").getAbsolutePath() + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Tells whether a repository borrows objects from a mirror.
+     *
+     * @param gitDir .git directory of the repository.
+     * @param mirror bare mirror directory.
+     * @return true if the mirror is listed in the alternates of the repository.
+     * @throws IOException if the alternates file cannot be read.
+     */
+    public static boolean isLinked(File gitDir, File mirror) throws IOException {
+        File alternates = new File(gitDir, "objects/info/alternates");
+        if (!alternates.exists()) {
+            return false;
+        }
+        String objects = new File(mirror, "objects").getAbsolutePath();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(alternates), "UTF-8"));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.trim().equals(objects)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private synchronized MirrorLock lockFor(String url) {
+        MirrorLock lock = locks.get(url);
+        if (lock == null) {
+            lock = new MirrorLock();
+            locks.put(url, lock);
+        }
+        return lock;
+    }
+
+    private static final class MirrorLock {
+        private long lastUpdate;
+        private long notification;
+    }
+}
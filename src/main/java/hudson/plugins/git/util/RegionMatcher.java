@@ -0,0 +1,283 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled matcher for the included/excluded regions of a job. A path matches if it matches any of
+ * the region regular expressions.
+ * <p/>
+ * Regions that are plain paths are looked up in a set, and regions of the form {@code some/dir/.*} are
+ * looked up in a prefix trie, so the common cases never reach the regex engine. All other regions are
+ * combined into a single alternation, so each path is run through one automaton instead of one per region.
+ */
+public final class RegionMatcher {
+
+    /**
+     * Matcher without any region, which matches nothing.
+     */
+    public static final RegionMatcher EMPTY = new RegionMatcher(new String[0]);
+
+    private static final String REGEX_METACHARS = "\\^$.|?*+()[]{}";
+    private static final String ANY_SUFFIX = ".*";
+
+    private final Set<String> literals = new HashSet<String>();
+    private final TrieNode prefixes = new TrieNode();
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+    private final boolean empty;
+
+    private RegionMatcher(String[] regions) {
+        StringBuilder alternation = new StringBuilder();
+        for (String region : regions) {
+            if (isLiteral(region)) {
+                literals.add(region);
+            } else if (region.endsWith(ANY_SUFFIX)
+                && isLiteral(region.substring(0, region.length() - ANY_SUFFIX.length()))) {
+                prefixes.add(region.substring(0, region.length() - ANY_SUFFIX.length()));
+            } else if (hasGroupReference(region)) {
+                // group numbers and names could clash inside the alternation
+                patterns.add(Pattern.compile(region));
+            } else {
+                // fail early on an invalid region, as Pattern.compile would for the region alone
+                Pattern.compile(region);
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(region).append(')');
+            }
+        }
+        if (alternation.length() > 0) {
+            patterns.add(0, Pattern.compile(alternation.toString()));
+        }
+        empty = regions.length == 0;
+    }
+
+    /**
+     * Compiles the given regions.
+     *
+     * @param regions regular expressions, may be null.
+     * @return matcher for the regions.
+     */
+    public static RegionMatcher compile(String[] regions) {
+        return regions == null || regions.length == 0 ? EMPTY : new RegionMatcher(regions);
+    }
+
+    /**
+     * Translates regions into sparse checkout patterns that cover every path the regions can match. Plain
+     * paths are kept as they are, other regions are widened to the directory before their first regex
+     * construct, e.g. {@code src/main/.*\.java} to {@code /src/main/}.
+     *
+     * @param regions regular expressions, may be null.
+     * @return patterns in the format of {@code .git/info/sparse-checkout}, empty if there is no region, or
+     *         null if some region may match paths outside of any directory.
+     */
+    public static List<String> toSparseCheckoutPatterns(String[] regions) {
+        List<String> sparsePatterns = new ArrayList<String>();
+        if (regions == null) {
+            return sparsePatterns;
+        }
+        for (String region : regions) {
+            if (hasTopLevelAlternation(region)) {
+                return null;
+            }
+            StringBuilder literal = new StringBuilder();
+            boolean complete = true;
+            for (int i = region.startsWith("^") ? 1 : 0; i < region.length() && complete; i++) {
+                char c = region.charAt(i);
+                if (c == '\\' && i + 1 < region.length() && !Character.isLetterOrDigit(region.charAt(i + 1))) {
+                    literal.append(region.charAt(++i));
+                } else if (REGEX_METACHARS.indexOf(c) == -1) {
+                    literal.append(c);
+                } else {
+                    if ("?*+{".indexOf(c) != -1 && literal.length() > 0) {
+                        // the quantifier applies to the last character
+                        literal.setLength(literal.length() - 1);
+                    }
+                    complete = false;
+                }
+            }
+            String path = literal.toString();
+            if (!complete) {
+                int directory = path.lastIndexOf('/');
+                if (directory < 0) {
+                    return null;
+                }
+                path = path.substring(0, directory + 1);
+            }
+            sparsePatterns.add("/" + path.replaceAll("([*?\\[\\\\])", "\\\\$1"));
+        }
+        return sparsePatterns;
+    }
+
+    /**
+     * Returns true if there is no region at all.
+     *
+     * @return true if this matcher has no region.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Checks whether the path matches any of the regions.
+     *
+     * @param path path relative to the repository root.
+     * @return true if any region matches the whole path.
+     */
+    public boolean matches(String path) {
+        if (literals.contains(path) || prefixes.matchesPrefixOf(path)) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLiteral(String region) {
+        for (int i = 0; i < region.length(); i++) {
+            if (REGEX_METACHARS.indexOf(region.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasTopLevelAlternation(String region) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < region.length(); i++) {
+            char c = region.charAt(i);
+            if (c == '\\') {
+                // skip the escaped character
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasGroupReference(String region) {
+        for (int i = 0; i < region.length() - 1; i++) {
+            char c = region.charAt(i);
+            if (c == '\\') {
+                char next = region.charAt(i + 1);
+                if ((next >= '1' && next <= '9') || next == 'k') {
+                    return true;
+                }
+                // skip the escaped character
+                i++;
+            } else if (c == '(' && region.startsWith("?<", i + 1) && i + 3 < region.length()
+                && region.charAt(i + 3) != '=' && region.charAt(i + 3) != '!') {
+                // named group
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Character trie of literal prefixes.
+     */
+    private static final class TrieNode {
+        private static final char NEXT_LINE = 0x85;
+        private static final char LINE_SEPARATOR = 0x2028;
+        private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private boolean terminal;
+
+        void add(String prefix) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.getOrCreateChild(prefix.charAt(i));
+            }
+            node.terminal = true;
+        }
+
+        boolean matchesPrefixOf(String path) {
+            TrieNode node = this;
+            for (int i = 0; !node.terminal; i++) {
+                if (i == path.length() || (node = node.child(path.charAt(i))) == null) {
+                    return false;
+                }
+            }
+            // '.' does not match line terminators
+            return !containsLineTerminator(path);
+        }
+
+        private TrieNode child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private TrieNode getOrCreateChild(char c) {
+            TrieNode child = child(c);
+            if (child == null) {
+                child = new TrieNode();
+                char[] newKeys = new char[keys.length + 1];
+                TrieNode[] newChildren = new TrieNode[children.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                System.arraycopy(children, 0, newChildren, 0, children.length);
+                newKeys[keys.length] = c;
+                newChildren[children.length] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return child;
+        }
+
+        private static boolean containsLineTerminator(String path) {
+            for (int i = 0; i < path.length(); i++) {
+                char c = path.charAt(i);
+                if (c == '\n' || c == '\r' || c == NEXT_LINE || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import hudson.plugins.git.GitException;
+import hudson.plugins.git.GitStatus;
+import hudson.plugins.git.IGitAPI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * Master-wide cache of the branches of remote repositories, used by remote polling.
+ * <p/>
+ * The heads of a repository are listed with a single {@code git ls-remote} and shared by every job polling that
+ * repository until they expire. Concurrent requests for the same repository wait for the one listing in progress
+ * instead of starting their own. {@link GitStatus} drops the cached heads of a repository when a push is notified.
+ * <p/>
+ * Entries are keyed by the URL as configured; jobs that access the same repository with different credentials
+ * share the result of whichever job listed it first.
+ */
+public final class RemoteHeadsCache {
+
+    /**
+     * Time in milliseconds the heads of a repository are reused. Zero or less disables caching.
+     */
+    public static final long TTL = Long.getLong(RemoteHeadsCache.class.getName() + ".ttl", 15000L);
+
+    private static final RemoteHeadsCache INSTANCE = new RemoteHeadsCache(TTL);
+
+    private final long ttl;
+
+    /**
+     * Cached or loading entries by repository URL.
+     */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    RemoteHeadsCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the cache shared by all jobs of this Hudson instance.
+     *
+     * @return master-wide cache.
+     */
+    public static RemoteHeadsCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the heads of a remote repository, listing them with the given git if they are not cached.
+     *
+     * @param git git used to list the heads.
+     * @param remoteRepoUrl remote repository URL.
+     * @return head commits keyed by full ref name.
+     * @throws GitException if the heads cannot be listed.
+     */
+    public Map<String, ObjectId> getHeads(IGitAPI git, String remoteRepoUrl) throws GitException {
+        if (ttl <= 0) {
+            return git.getRemoteHeads(remoteRepoUrl);
+        }
+        Entry entry;
+        boolean load = false;
+        synchronized (this) {
+            entry = entries.get(remoteRepoUrl);
+            if (entry == null || entry.isExpired(System.currentTimeMillis(), ttl)) {
+                entry = new Entry(remoteRepoUrl);
+                entries.put(remoteRepoUrl, entry);
+                load = true;
+            }
+        }
+        if (load) {
+            try {
+                entry.loaded(git.getRemoteHeads(remoteRepoUrl), null);
+            } catch (GitException e) {
+                entry.loaded(null, e);
+                synchronized (this) {
+                    if (entries.get(remoteRepoUrl) == entry) {
+                        entries.remove(remoteRepoUrl);
+                    }
+                }
+                throw e;
+            }
+        }
+        return entry.await();
+    }
+
+    /**
+     * Drops the cached heads of every URL that loosely matches the given repository.
+     *
+     * @param uri repository that changed.
+     * @see GitStatus#looselyMatches(URIish, URIish)
+     */
+    public synchronized void invalidate(URIish uri) {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.uri == null || GitStatus.looselyMatches(uri, entry.uri)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached repositories.
+     *
+     * @return cache size.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final URIish uri;
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        private volatile long loadedAt;
+        private Map<String, ObjectId> heads;
+        private GitException failure;
+
+        private Entry(String remoteRepoUrl) {
+            URIish parsed;
+            try {
+                parsed = new URIish(remoteRepoUrl);
+            } catch (URISyntaxException e) {
+                parsed = null;
+            }
+            this.uri = parsed;
+        }
+
+        private synchronized void loaded(Map<String, ObjectId> heads, GitException failure) {
+            this.heads = heads == null ? null : Collections.unmodifiableMap(heads);
+            this.failure = failure;
+            this.loadedAt = System.currentTimeMillis();
+            loaded.countDown();
+        }
+
+        private boolean isExpired(long now, long ttl) {
+            return loaded.getCount() == 0 && now - loadedAt > ttl;
+        }
+
+        private Map<String, ObjectId> await() throws GitException {
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GitException("Interrupted while waiting for the heads of " + uri, e);
+            }
+            synchronized (this) {
+                if (failure != null) {
+                    throw new GitException("Failed to list the heads of " + uri, failure);
+                }
+                return heads;
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+/**
+ * Node-local pool of JGit {@link Repository} instances, keyed by canonical git directory.
+ * <p/>
+ * {@link hudson.plugins.git.GitAPI} borrows its repository from this pool instead of opening a new one
+ * for every call, so that open pack files, parsed pack indexes and the ref cache survive across polls
+ * and builds. Borrowed repositories are reference counted; idle ones are closed once they have been
+ * unused for longer than the idle timeout, or when the pool grows beyond its size cap.
+ */
+public final class RepositoryPool {
+
+    /**
+     * Maximum number of repositories kept open. Repositories that are currently borrowed are never
+     * closed, so the pool may temporarily exceed this size.
+     */
+    public static final int MAX_SIZE = Integer.getInteger(RepositoryPool.class.getName() + ".maxSize", 64);
+
+    /**
+     * Time in milliseconds after which an unused repository is closed.
+     */
+    public static final long IDLE_TIMEOUT = Long.getLong(RepositoryPool.class.getName() + ".idleTimeout",
+        10 * 60 * 1000L);
+
+    private static final RepositoryPool INSTANCE = new RepositoryPool(MAX_SIZE, IDLE_TIMEOUT);
+
+    private final int maxSize;
+    private final long idleTimeout;
+
+    /**
+     * Pooled entries by canonical git directory, in least recently used order.
+     */
+    private final LinkedHashMap<File, Entry> entries = new LinkedHashMap<File, Entry>(16, 0.75f, true);
+
+    /**
+     * Every repository handed out by this pool, including invalidated ones that are still borrowed.
+     */
+    private final Map<Repository, Entry> borrowed = new IdentityHashMap<Repository, Entry>();
+
+    RepositoryPool(int maxSize, long idleTimeout) {
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the pool shared by all {@link hudson.plugins.git.GitAPI} instances of this JVM.
+     *
+     * @return node-local pool.
+     */
+    public static RepositoryPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Borrows the repository stored in the given git directory, opening it if necessary.
+     * Every call must be paired with {@link #release(Repository)}; callers must not close
+     * the returned repository themselves.
+     *
+     * @param gitDir the .git directory.
+     * @return shared repository.
+     * @throws IOException if the repository cannot be opened.
+     */
+    public synchronized Repository acquire(File gitDir) throws IOException {
+        File key = gitDir.getCanonicalFile();
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null && !new File(key, "objects").isDirectory()) {
+            // The repository was deleted behind our back, e.g. by a manual workspace wipe.
+            discard(entry);
+            entry = null;
+        }
+        if (entry == null) {
+            entry = new Entry(key, new FileRepositoryBuilder().setGitDir(key).setMustExist(true).build());
+            entries.put(key, entry);
+            borrowed.put(entry.repository, entry);
+        }
+        entry.refCount++;
+        evict(now);
+        return entry.repository;
+    }
+
+    /**
+     * Returns a repository obtained from {@link #acquire(File)} to the pool.
+     *
+     * @param repository borrowed repository.
+     */
+    public synchronized void release(Repository repository) {
+        Entry entry = borrowed.get(repository);
+        if (entry == null) {
+            LOGGER.log(Level.FINE, "Releasing repository {0} which is not pooled", repository.getDirectory());
+            return;
+        }
+        entry.refCount--;
+        entry.lastReleased = System.currentTimeMillis();
+        if (entry.invalid && entry.refCount <= 0) {
+            close(entry);
+        }
+        evict(entry.lastReleased);
+    }
+
+    /**
+     * Drops the repository stored in the given git directory from the pool. It is closed as soon as
+     * nobody borrows it anymore. Must be called before the directory is deleted or re-created.
+     *
+     * @param gitDir the .git directory.
+     */
+    public synchronized void invalidate(File gitDir) {
+        File key;
+        try {
+            key = gitDir.getCanonicalFile();
+        } catch (IOException e) {
+            key = gitDir.getAbsoluteFile();
+        }
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            discard(entry);
+        }
+    }
+
+    /**
+     * Returns the number of repositories currently pooled.
+     *
+     * @return number of open repositories.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        int size = entries.size();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.refCount > 0) {
+                continue;
+            }
+            if (size > maxSize || now - entry.lastReleased > idleTimeout) {
+                it.remove();
+                close(entry);
+                size--;
+            }
+        }
+    }
+
+    private void discard(Entry entry) {
+        entries.remove(entry.gitDir);
+        entry.invalid = true;
+        if (entry.refCount <= 0) {
+            close(entry);
+        }
+    }
+
+    private void close(Entry entry) {
+        borrowed.remove(entry.repository);
+        entry.repository.close();
+    }
+
+    private static final class Entry {
+        private final File gitDir;
+        private final Repository repository;
+        private int refCount;
+        private long lastReleased;
+        private boolean invalid;
+
+        private Entry(File gitDir, Repository repository) {
+            this.gitDir = gitDir;
+            this.repository = repository;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(RepositoryPool.class.getName());
+}
@@ -0,0 +1,242 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.git.util;
+
+import hudson.Util;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Removes the untracked files and directories of a working tree, like {@code git clean -fd}, or
+ * {@code git clean -fdx} if ignored files are removed as well.
+ * <p/>
+ * Untracked entries are found in a single walk over the index and the working tree, which does not descend into
+ * untracked or ignored directories and does not look at the content of tracked files. They are then deleted in
+ * parallel, one task per directory, on a bounded node-local thread pool. Nested repositories are kept.
+ */
+public final class WorkspaceCleaner {
+
+    /**
+     * Maximum number of directories deleted at the same time on this node. One or less deletes sequentially.
+     */
+    public static final int THREADS = Integer.getInteger(WorkspaceCleaner.class.getName() + ".threads", 4);
+
+    private static ExecutorService executor;
+
+    private final boolean removeIgnored;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final ConcurrentLinkedQueue<File> directories = new ConcurrentLinkedQueue<File>();
+    private final ConcurrentLinkedQueue<IOException> failures = new ConcurrentLinkedQueue<IOException>();
+    private int pending;
+
+    /**
+     * Creates a cleaner.
+     *
+     * @param removeIgnored whether files ignored by {@code .gitignore} are removed as well.
+     */
+    public WorkspaceCleaner(boolean removeIgnored) {
+        this.removeIgnored = removeIgnored;
+    }
+
+    /**
+     * Removes the untracked entries of the working tree of the given repository. May be called for several
+     * repositories in a row; the counts add up.
+     *
+     * @param repository repository with a working tree.
+     * @throws IOException if the index cannot be read or an entry cannot be deleted.
+     * @throws InterruptedException if interrupted while waiting for the deletion.
+     */
+    public void clean(Repository repository) throws IOException, InterruptedException {
+        List<File> untracked = findUntracked(repository);
+        if (untracked.isEmpty()) {
+            return;
+        }
+        if (THREADS <= 1) {
+            for (File entry : untracked) {
+                delete(entry, false);
+            }
+        } else {
+            synchronized (this) {
+                for (File entry : untracked) {
+                    submit(entry);
+                }
+                while (pending > 0) {
+                    wait();
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw failures.peek();
+        }
+
+        // directories are empty now; remove the deepest first
+        List<File> emptied = new ArrayList<File>(directories);
+        directories.clear();
+        Collections.sort(emptied, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return b.getPath().length() - a.getPath().length();
+            }
+        });
+        for (File directory : emptied) {
+            String[] left = directory.list();
+            if (left != null && left.length > 0) {
+                // contains a nested repository
+                continue;
+            }
+            if (!directory.delete() && directory.exists()) {
+                throw new IOException("Unable to delete " + directory);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of files removed so far.
+     *
+     * @return number of files.
+     */
+    public long getFiles() {
+        return files.get();
+    }
+
+    /**
+     * Returns the total size of the files removed so far.
+     *
+     * @return number of bytes.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    private List<File> findUntracked(Repository repository) throws IOException {
+        List<File> untracked = new ArrayList<File>();
+        File workTree = repository.getWorkTree();
+        TreeWalk walk = new TreeWalk(repository);
+        try {
+            walk.addTree(new DirCacheIterator(repository.readDirCache()));
+            walk.addTree(new FileTreeIterator(repository));
+            while (walk.next()) {
+                FileTreeIterator file = walk.getTree(1, FileTreeIterator.class);
+                if (file == null) {
+                    // tracked, but missing in the working tree
+                    continue;
+                }
+                if (walk.getTree(0, DirCacheIterator.class) != null) {
+                    if (walk.isSubtree()) {
+                        walk.enterSubtree();
+                    }
+                    continue;
+                }
+                if (FileMode.GITLINK.equals(file.getEntryFileMode())
+                    || (!removeIgnored && file.isEntryIgnored())) {
+                    continue;
+                }
+                untracked.add(new File(workTree, walk.getPathString()));
+            }
+        } finally {
+            walk.release();
+        }
+        return untracked;
+    }
+
+    private void submit(final File entry) {
+        pending++;
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                try {
+                    delete(entry, true);
+                } catch (IOException e) {
+                    failures.add(e);
+                } catch (RuntimeException e) {
+                    failures.add(new IOException("Unable to delete " + entry, e));
+                } finally {
+                    synchronized (WorkspaceCleaner.this) {
+                        pending--;
+                        WorkspaceCleaner.this.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes a file, or the files of a directory. Directories are only emptied here and removed once every
+     * task has finished.
+     *
+     * @param entry file or directory.
+     * @param parallel whether subdirectories are deleted by tasks of their own.
+     */
+    private void delete(File entry, boolean parallel) throws IOException {
+        if (!entry.isDirectory() || Util.isSymlink(entry)) {
+            long length = entry.length();
+            if (!entry.delete() && entry.exists()) {
+                throw new IOException("Unable to delete " + entry);
+            }
+            files.incrementAndGet();
+            bytes.addAndGet(length);
+            return;
+        }
+        directories.add(entry);
+        File[] children = entry.listFiles();
+        if (children == null) {
+            throw new IOException("Unable to list " + entry);
+        }
+        for (File child : children) {
+            if (new File(child, Constants.DOT_GIT).exists()) {
+                // nested repository
+                continue;
+            }
+            if (parallel && child.isDirectory() && !Util.isSymlink(child)) {
+                synchronized (this) {
+                    submit(child);
+                }
+            } else {
+                delete(child, parallel);
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS,
+                new ParallelFetcher.DaemonThreadFactory("Git workspace clean"));
+        }
+        return executor;
+    }
+}
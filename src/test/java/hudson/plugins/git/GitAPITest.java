@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, Oracle Corporation, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git;
+
+import hudson.plugins.git.util.GitUtils;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Checks that the JGit implementation of the read-only {@link GitAPI} queries answers like git(1).
+ */
+public class GitAPITest extends AbstractGitTestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        GitAPI.JGIT_QUERIES = true;
+        super.tearDown();
+    }
+
+    private void createHistory() throws Exception {
+        commit("commitFile1", johnDoe, "Commit number 1");
+        git.tag("v1.0", "first release");
+        git.branch("topic");
+        commit("commitFile2", johnDoe, "Commit number 2");
+        git.checkout("topic");
+        commit("commitFile3", janeDoe, "Commit number 3");
+        git.checkout("master");
+    }
+
+    public void testRevParse() throws Exception {
+        createHistory();
+        GitAPI.JGIT_QUERIES = false;
+        ObjectId topic = git.revParse("topic");
+        ObjectId parent = git.revParse("HEAD^");
+        ObjectId tag = git.revParse("v1.0");
+
+        GitAPI.JGIT_QUERIES = true;
+        assertEquals(topic, git.revParse("topic"));
+        assertEquals(parent, git.revParse("HEAD^"));
+        assertEquals(tag, git.revParse("v1.0"));
+    }
+
+    public void testIsDeepenSupported() {
+        assertTrue(GitAPI.isDeepenSupported("git version 2.11.0"));
+        assertTrue(GitAPI.isDeepenSupported("git version 2.39.5.windows.1"));
+        assertTrue(GitAPI.isDeepenSupported("git version 3.0.0"));
+        assertFalse(GitAPI.isDeepenSupported("git version 2.10.5"));
+        assertFalse(GitAPI.isDeepenSupported("git version 1.8.3.1"));
+        assertFalse(GitAPI.isDeepenSupported("unknown"));
+    }
+
+    public void testMergeBase() throws Exception {
+        createHistory();
+        ObjectId master = git.revParse("master");
+        ObjectId topic = git.revParse("topic");
+        GitAPI.JGIT_QUERIES = false;
+        ObjectId expected = git.mergeBase(master, topic);
+        assertNotNull(expected);
+
+        GitAPI.JGIT_QUERIES = true;
+        assertEquals(expected, git.mergeBase(master, topic));
+    }
+
+    public void testRevList() throws Exception {
+        createHistory();
+        GitAPI.JGIT_QUERIES = false;
+        Set<ObjectId> all = new HashSet<ObjectId>(git.revListAll());
+        List<ObjectId> topic = git.revListBranch("topic");
+
+        GitAPI.JGIT_QUERIES = true;
+        assertEquals(3, all.size());
+        assertEquals(all, new HashSet<ObjectId>(git.revListAll()));
+        assertEquals(topic, git.revListBranch("topic"));
+    }
+
+    public void testLsTree() throws Exception {
+        createHistory();
+        GitAPI.JGIT_QUERIES = false;
+        List<IndexEntry> expected = git.lsTree("HEAD");
+
+        GitAPI.JGIT_QUERIES = true;
+        List<IndexEntry> actual = git.lsTree("HEAD");
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getMode(), actual.get(i).getMode());
+            assertEquals(expected.get(i).getType(), actual.get(i).getType());
+            assertEquals(expected.get(i).getObject(), actual.get(i).getObject());
+            assertEquals(expected.get(i).getFile(), actual.get(i).getFile());
+        }
+    }
+
+    public void testTags() throws Exception {
+        createHistory();
+        GitAPI.JGIT_QUERIES = false;
+        Set<String> tags = git.getTagNames("v*");
+        String description = git.describe("topic");
+
+        GitAPI.JGIT_QUERIES = true;
+        assertTrue(git.tagExists("v1.0"));
+        assertFalse(git.tagExists("v2.0"));
+        assertEquals(tags, git.getTagNames("v*"));
+        assertTrue(git.getTagNames("x*").isEmpty());
+        assertEquals(description, git.describe("topic"));
+    }
+
+    public void testFilterTipBranches() throws Exception {
+        createHistory();
+        ObjectId v1 = git.revParse("v1.0^{commit}");
+        ObjectId master = git.revParse("master");
+        ObjectId topic = git.revParse("topic");
+        ObjectId unknown = ObjectId.fromString("0123456789abcdef0123456789abcdef01234567");
+
+        Set<ObjectId> tips = git.getTipCommits(Arrays.asList(v1, master, topic, unknown));
+        assertEquals(new HashSet<ObjectId>(Arrays.asList(master, topic, unknown)), tips);
+
+        Revision old = new Revision(v1);
+        Revision masterRevision = new Revision(master);
+        Revision duplicate = new Revision(master);
+        Revision topicRevision = new Revision(topic);
+        Collection<Revision> filtered = new GitUtils(listener, git).filterTipBranches(
+            Arrays.asList(old, masterRevision, duplicate, topicRevision));
+        assertEquals(2, filtered.size());
+        assertTrue(filtered.contains(masterRevision));
+        assertTrue(filtered.contains(topicRevision));
+    }
+
+    public void testShowRevisions() throws Exception {
+        createHistory();
+        Revision master = new Revision(git.revParse("master"));
+        Revision topic = new Revision(git.revParse("topic"));
+        Revision v1 = new Revision(git.revParse("v1.0^{commit}"));
+
+        Map<String, List<String>> revShows = git.showRevisions(Arrays.asList(master, topic, v1));
+        assertEquals(3, revShows.size());
+        for (Revision r : Arrays.asList(master, topic, v1)) {
+            assertEquals(git.showRevision(r), revShows.get(r.getSha1String()));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git;
+
+import java.io.File;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+public class GitChangeLogParserTest extends TestCase {
+    private File changelogFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        changelogFile = File.createTempFile("changelog", ".xml");
+        StringBuilder log = new StringBuilder("Changes in branch origin/master, between 1 and 3\n");
+        for (int i = 1; i <= 3; i++) {
+            log.append("commit ").append(i).append("23abc456def\n")
+                .append("tree 789ghi012jkl\n")
+                .append("parent 345mno678pqr\n")
+                .append("author John Author <jauthor@nospam.com> 1234567 -0600\n")
+                .append("committer John Committer <jcommitter@nospam.com> 1234567 -0600\n")
+                .append("\n")
+                .append("    Commit ").append(i).append(".\n")
+                .append("    commit message line that is not a commit header\n")
+                .append("\n")
+                .append(":000000 123456 0000000000000000000000000000000000000000 "
+                    + "123abc456def789abc012def345abc678def901a A\tsrc/test/file").append(i).append('\n');
+        }
+        FileUtils.writeStringToFile(changelogFile, log.toString());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        GitChangeLogParser.LAZY = true;
+        changelogFile.delete();
+        super.tearDown();
+    }
+
+    public void testLazyParseMatchesEagerParse() throws Exception {
+        GitChangeLogParser.LAZY = false;
+        GitChangeSetList eager = new GitChangeLogParser(false).parse(null, changelogFile);
+        GitChangeLogParser.LAZY = true;
+        GitChangeSetList lazy = new GitChangeLogParser(false).parse(null, changelogFile);
+
+        List<GitChangeSet> expected = eager.getLogs();
+        List<GitChangeSet> actual = lazy.getLogs();
+        assertEquals(3, actual.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getComment(), actual.get(i).getComment());
+            assertEquals(expected.get(i).getAffectedPaths(), actual.get(i).getAffectedPaths());
+            assertSame(lazy, actual.get(i).getParent());
+        }
+        assertEquals("323abc456def", actual.get(0).getId());
+        assertSame(actual.get(1), actual.get(1));
+    }
+
+    public void testEmptyChangelog() throws Exception {
+        FileUtils.writeStringToFile(changelogFile, "");
+        assertTrue(new GitChangeLogParser(false).parse(null, changelogFile).isEmptySet());
+    }
+}
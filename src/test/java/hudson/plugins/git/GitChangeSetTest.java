@@ -130,4 +130,38 @@ public class GitChangeSetTest extends TestCase {
 
         Assert.assertEquals("John Author", authorCS.getAuthorName());
     }
+
+    public void testParseUnusualLines() {
+        ArrayList<String> lines = new ArrayList<String>();
+        lines.add("commit 123abc456def extra");
+        lines.add("parent 345mno678pqr");
+        lines.add("author John <Jr> Author <jauthor@nospam.com> 1234567 -0600");
+        lines.add("committer <missing name and mail");
+        lines.add("");
+        lines.add("    Title");
+        lines.add("    ");
+        lines.add("    Body");
+        lines.add(":123456 789012 123abc456def789abc012def345abc678def901a bc234def567abc890def123abc456def789abc01 M\tpath with spaces");
+        lines.add(":123456 789012 123ABC456def789abc012def345abc678def901a bc234def567abc890def123abc456def789abc01 M\tupper.case");
+        lines.add(":123456 789012 123abc456def789abc012def345abc678def901a bc234def567abc890def123abc456def789abc01 Z\tunknown.status");
+        lines.add(":123456 789012 123abc456def789abc012def345abc678def901a bc234def567abc890def123abc456def789abc01 R\tno-tab");
+        lines.add(":12345 789012 123abc456def789abc012def345abc678def901a");
+
+        GitChangeSet changeSet = new GitChangeSet(lines, true);
+        Assert.assertEquals("123abc456def", changeSet.getId());
+        Assert.assertEquals("345mno678pqr", changeSet.getParentCommit());
+        Assert.assertEquals("John <Jr> Author", changeSet.getAuthorName());
+        Assert.assertEquals("Title", changeSet.getMsg());
+        Assert.assertEquals("Title\n\nBody\n", changeSet.getComment());
+        Assert.assertEquals(1, changeSet.getPaths().size());
+        Assert.assertEquals("path with spaces", changeSet.getPaths().iterator().next().getPath());
+        Assert.assertTrue(changeSet.getDate().endsWith(" -0600"));
+
+        try {
+            new GitChangeSet(lines, false).getAuthorName();
+            Assert.fail("malformed committer line should not be parsed");
+        } catch (RuntimeException e) {
+            // expected, there is no committer
+        }
+    }
 }
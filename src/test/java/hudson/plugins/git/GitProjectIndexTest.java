@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git;
+
+import hudson.model.FreeStyleProject;
+import hudson.scm.NullSCM;
+import hudson.triggers.SCMTrigger;
+import org.eclipse.jgit.transport.URIish;
+
+public class GitProjectIndexTest extends AbstractGitTestCase {
+
+    public void testProjectsAreIndexedByRepository() throws Exception {
+        GitProjectIndex index = GitProjectIndex.getInstance();
+        URIish uri = new URIish(workDir.getAbsolutePath() + "/");
+        assertTrue(index.getProjects(uri).isEmpty());
+        assertFalse(index.hasProjects());
+
+        FreeStyleProject project = setupSimpleProject("master");
+        assertTrue(index.hasProjects());
+        assertEquals(1, index.getProjects(uri).size());
+        assertSame(project, index.getProjects(uri).get(0));
+        assertTrue(index.getProjects(new URIish("ssh://example.com/other.git")).isEmpty());
+
+        project.renameTo("renamed");
+        assertSame(project, index.getProjects(uri).get(0));
+
+        project.setScm(new NullSCM());
+        assertTrue(index.getProjects(uri).isEmpty());
+        assertFalse(index.hasProjects());
+
+        FreeStyleProject other = setupSimpleProject("master");
+        assertSame(other, index.getProjects(uri).get(0));
+        other.delete();
+        assertTrue(index.getProjects(uri).isEmpty());
+    }
+
+    public void testNotifyCommitTriggersIndexedProject() throws Exception {
+        FreeStyleProject project = setupSimpleProject("master");
+        project.addTrigger(new SCMTrigger(""));
+        commit("commitFile1", johnDoe, "Commit number 1");
+
+        assertEquals(1, new GitStatus.HudsonAbstractProjectListener()
+            .onNotifyCommit(new URIish(workDir.getAbsolutePath()), "master").size());
+        assertEquals(1, new GitStatus.HudsonAbstractProjectListener()
+            .onNotifyCommit(new URIish("ssh://example.com/other.git"), "master").size());
+    }
+}
@@ -23,13 +23,21 @@
  */
 package hudson.plugins.git;
 
+import hudson.FilePath;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Node;
 import hudson.model.Result;
 import hudson.model.User;
+import hudson.plugins.git.util.BuildData;
+import hudson.plugins.git.util.BuildDataStore;
+import hudson.plugins.git.util.PollingBackoff;
+import hudson.plugins.git.util.RemoteHeadsCache;
 import hudson.slaves.EnvironmentVariablesNodeProperty.Entry;
+import java.io.File;
 import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.transport.URIish;
 
 /**
  * Tests for {@link GitSCM}.
@@ -349,6 +357,8 @@ public class GitSCMTest extends AbstractGitTestCase {
         
         final String commitFile2 = "commitFile2";
         commit(commitFile2, janeDoe, "Commit number 2");
+        // remote heads are cached until they expire or a push is notified
+        RemoteHeadsCache.getInstance().invalidate(new URIish(workDir.getAbsolutePath()));
         assertTrue("scm polling did not detect commit2 change", project.pollSCMChanges(listener));
         // ... and build it...
         final FreeStyleBuild build2 = build(project, Result.SUCCESS, commitFile2);
@@ -360,4 +370,133 @@ public class GitSCMTest extends AbstractGitTestCase {
         assertFalse("scm polling should not detect any more changes after build", project.pollSCMChanges(listener));
     }
 
+    public void testRemotePollWithWildcardBranches() throws Exception {
+        FreeStyleProject project = setupProject("*", false, null, null, null, true);
+        assertTrue(((GitSCM) project.getScm()).getRemotePoll());
+        final String commitFile1 = "commitFile1";
+        commit(commitFile1, johnDoe, "Commit number 1");
+        build(project, Result.SUCCESS, commitFile1);
+        assertFalse("scm polling should not detect any more changes after build", project.pollSCMChanges(listener));
+
+        // a new branch pointing at a built commit is not a change
+        git.branch("topic");
+        RemoteHeadsCache.getInstance().invalidate(new URIish(workDir.getAbsolutePath()));
+        assertFalse("scm polling should not detect a branch of a built commit", project.pollSCMChanges(listener));
+
+        git.checkout("topic");
+        final String commitFile2 = "commitFile2";
+        commit(commitFile2, janeDoe, "Commit number 2");
+        RemoteHeadsCache.getInstance().invalidate(new URIish(workDir.getAbsolutePath()));
+        assertTrue("scm polling did not detect commit2 on topic", project.pollSCMChanges(listener));
+        build(project, Result.SUCCESS, commitFile2);
+        assertFalse("scm polling should not detect any more changes after build", project.pollSCMChanges(listener));
+    }
+
+    public void testShallowCloneIsDeepenedToLastBuild() throws Exception {
+        FreeStyleProject project = setupSimpleProject("master");
+        GitSCM scm = (GitSCM) project.getScm();
+        scm.setShallowDepth(1);
+        scm.setDeepenToLastBuild(true);
+        commit("commitFile1", johnDoe, "Commit number 1");
+        commit("commitFile2", johnDoe, "Commit number 2");
+        FreeStyleBuild build1 = build(project, Result.SUCCESS, "commitFile2");
+        assertTrue(build1.getWorkspace().child(".git/shallow").exists());
+
+        commit("commitFile3", johnDoe, "Commit number 3");
+        commit("commitFile4", johnDoe, "Commit number 4");
+        // a fresh clone of depth 1 does not contain the last built commit
+        build1.getWorkspace().deleteRecursive();
+        FreeStyleBuild build2 = build(project, Result.SUCCESS, "commitFile4");
+        assertEquals(2, build2.getChangeSet().getItems().length);
+
+        scm.setDeepenToLastBuild(false);
+        commit("commitFile5", johnDoe, "Commit number 5");
+        commit("commitFile6", johnDoe, "Commit number 6");
+        build2.getWorkspace().deleteRecursive();
+        FreeStyleBuild build3 = build(project, Result.SUCCESS, "commitFile6");
+        assertTrue(build3.getChangeSet().isEmptySet());
+    }
+
+    public void testBuiltBranchesAreKeptInTheJobLog() throws Exception {
+        FreeStyleProject project = setupProject("master", false);
+        final String commitFile1 = "commitFile1";
+        commit(commitFile1, johnDoe, "Commit number 1");
+        build(project, Result.SUCCESS, commitFile1);
+        final String commitFile2 = "commitFile2";
+        commit(commitFile2, janeDoe, "Commit number 2");
+        final FreeStyleBuild build2 = build(project, Result.SUCCESS, commitFile2);
+
+        assertEquals(2, FileUtils.readLines(new File(project.getRootDir(), BuildDataStore.FILE_NAME)).size());
+        BuildData buildData = build2.getAction(BuildData.class);
+        assertEquals(build2.getNumber(), buildData.getStoredBuildNumber());
+        assertEquals(2, buildData.getLastBuildOfBranch("origin/master").getBuildNumber());
+        assertEquals(2, BuildDataStore.forJob(project).getLatestBuildNumber());
+        assertSame(buildData, ((GitSCM) project.getScm()).getBuildData(build2, false));
+        assertFalse("scm polling should not detect any more changes after build", project.pollSCMChanges(listener));
+    }
+
+    public void testAdaptivePollingSkipsQuietRepositoriesUntilNotified() throws Exception {
+        FreeStyleProject project = setupProject("master", false);
+        ((GitSCM) project.getScm()).setAdaptivePolling(true);
+        final String commitFile1 = "commitFile1";
+        commit(commitFile1, johnDoe, "Commit number 1");
+        build(project, Result.SUCCESS, commitFile1);
+
+        assertFalse("scm polling should not detect any more changes after build", project.pollSCMChanges(listener));
+        assertEquals(2 * PollingBackoff.MIN_INTERVAL,
+            ((GitSCM) project.getScm()).getAdaptivePollingInterval(project));
+
+        final String commitFile2 = "commitFile2";
+        commit(commitFile2, janeDoe, "Commit number 2");
+        assertFalse("scm polling should be skipped within the interval", project.pollSCMChanges(listener));
+        PollingBackoff.getInstance().invalidate(new URIish(workDir.getAbsolutePath()));
+        assertTrue("scm polling did not detect commit2 change", project.pollSCMChanges(listener));
+    }
+
+    public void testNarrowRefSpecsOnlyFetchConfiguredBranches() throws Exception {
+        FreeStyleProject project = setupSimpleProject("master");
+        ((GitSCM) project.getScm()).setNarrowRefSpecs(true);
+        commit("commitFile1", johnDoe, "Commit number 1");
+        git.branch("other");
+        FreeStyleBuild build1 = build(project, Result.SUCCESS, "commitFile1");
+        assertFalse(build1.getLog().contains("Not every configured branch"));
+        FilePath refs = build1.getWorkspace().child(".git/refs/remotes/origin");
+        assertTrue(refs.child("master").exists());
+        assertFalse(refs.child("other").exists());
+
+        commit("commitFile2", johnDoe, "Commit number 2");
+        assertTrue("scm polling should detect changes in 'master' branch", project.pollSCMChanges(listener));
+        build(project, Result.SUCCESS, "commitFile2");
+        assertFalse(refs.child("other").exists());
+    }
+
+    public void testNarrowRefSpecsBuildTagsAndCommits() throws Exception {
+        commit("commitFile1", johnDoe, "Commit number 1");
+        git.tag("mytag", "mytag initial");
+        commit("commitFile2", johnDoe, "Commit number 2");
+        FreeStyleProject project = setupSimpleProject("mytag");
+        ((GitSCM) project.getScm()).setNarrowRefSpecs(true);
+        FreeStyleBuild build1 = build(project, Result.SUCCESS, "commitFile1");
+        assertTrue(build1.getLog().contains("Not every configured branch is a branch of origin"));
+
+        String sha1 = git.revParse("master").name();
+        project = setupSimpleProject(sha1);
+        ((GitSCM) project.getScm()).setNarrowRefSpecs(true);
+        build(project, Result.SUCCESS, "commitFile2");
+    }
+
+    public void testSparseCheckoutOfIncludedRegions() throws Exception {
+        FreeStyleProject project = setupProject("master", false, null, null, null, null, "app/.*", false);
+        GitSCM scm = (GitSCM) project.getScm();
+        scm.setSparseCheckout(true);
+        scm.setSparseCheckoutPaths("/pom.xml");
+        commit("app/src.txt", johnDoe, "Commit number 1");
+        commit("lib/src.txt", johnDoe, "Commit number 2");
+        commit("pom.xml", johnDoe, "Commit number 3");
+        FreeStyleBuild build1 = build(project, Result.SUCCESS, "app/src.txt", "pom.xml");
+        assertFalse(build1.getWorkspace().child("lib/src.txt").exists());
+
+        scm.setSparseCheckout(false);
+        build(project, Result.SUCCESS, "app/src.txt", "lib/src.txt", "pom.xml");
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Hudson;
+import hudson.model.Queue;
+import hudson.plugins.git.util.BuildData;
+import hudson.triggers.SCMTrigger;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.URIish;
+
+public class GitStatusTest extends AbstractGitTestCase {
+
+    public void testNotifyCommitWithSha1BuildsCommit() throws Exception {
+        FreeStyleProject project = setupSimpleProject("master");
+        project.addTrigger(new SCMTrigger(""));
+        project.setQuietPeriod(0);
+        commit("commitFile1", johnDoe, "Commit number 1");
+        ObjectId first = git.revParse("HEAD");
+        commit("commitFile2", johnDoe, "Commit number 2");
+
+        List<GitStatus.ResponseContributor> result = new GitStatus.HudsonAbstractProjectListener()
+            .onNotifyCommit(new URIish(workDir.getAbsolutePath()), first.name(), new String[]{"master"});
+        assertEquals(1, result.size());
+        waitUntilNoActivity();
+
+        FreeStyleBuild build = project.getLastBuild();
+        assertNotNull(build);
+        assertEquals(1, build.getNumber());
+        assertNotNull(build.getCause(GitStatus.CommitHookCause.class));
+        assertEquals(first, build.getAction(BuildData.class).getLastBuiltRevision().getSha1());
+    }
+
+    public void testNotifyCommitWithExcludedSha1() throws Exception {
+        FreeStyleProject project = setupSimpleProject("master");
+        project.addTrigger(new SCMTrigger(""));
+        project.setQuietPeriod(0);
+        commit("commitFile1", johnDoe, "Commit number 1");
+        ObjectId head = git.revParse("HEAD");
+        ((GitSCM) project.getScm()).addExcludedCommit(head.name());
+
+        assertEquals(1, new GitStatus.HudsonAbstractProjectListener()
+            .onNotifyCommit(new URIish(workDir.getAbsolutePath()), head.name(), new String[0]).size());
+        waitUntilNoActivity();
+        assertNull(project.getLastBuild());
+    }
+
+    public void testNotifyCommitWithSha1WithoutBranchPolls() throws Exception {
+        FreeStyleProject project = setupSimpleProject("master");
+        project.addTrigger(new SCMTrigger(""));
+        project.setQuietPeriod(0);
+        commit("commitFile1", johnDoe, "Commit number 1");
+        ObjectId master = git.revParse("HEAD");
+        git.launchCommand("checkout", "-b", "feature");
+        commit("commitFile2", johnDoe, "Commit on feature");
+        ObjectId feature = git.revParse("HEAD");
+        git.launchCommand("checkout", "master");
+
+        List<GitStatus.ResponseContributor> result = new GitStatus.HudsonAbstractProjectListener()
+            .onNotifyCommit(new URIish(workDir.getAbsolutePath()), feature.name(), new String[0]);
+        assertEquals(1, result.size());
+        assertEquals("PollingScheduledResponseContributor", result.get(0).getClass().getSimpleName());
+        waitUntilNoActivity();
+
+        for (FreeStyleBuild build : project.getBuilds()) {
+            assertNull(build.getCause(GitStatus.CommitHookCause.class));
+            assertEquals(master, build.getAction(BuildData.class).getLastBuiltRevision().getSha1());
+        }
+    }
+
+    public void testNotifyCommitWithBuiltSha1() throws Exception {
+        FreeStyleProject project = setupSimpleProject("master");
+        project.addTrigger(new SCMTrigger(""));
+        project.setQuietPeriod(0);
+        commit("commitFile1", johnDoe, "Commit number 1");
+        ObjectId head = git.revParse("HEAD");
+        URIish uri = new URIish(workDir.getAbsolutePath());
+        new GitStatus.HudsonAbstractProjectListener().onNotifyCommit(uri, head.name(), new String[]{"master"});
+        waitUntilNoActivity();
+        assertEquals(1, project.getLastBuild().getNumber());
+
+        List<GitStatus.ResponseContributor> result = new GitStatus.HudsonAbstractProjectListener()
+            .onNotifyCommit(uri, head.name(), new String[]{"master"});
+        assertEquals("MessageResponseContributor", result.get(0).getClass().getSimpleName());
+        waitUntilNoActivity();
+        assertEquals(1, project.getLastBuild().getNumber());
+    }
+
+    public void testNotifiedCommitsAreQueuedOncePerBranch() throws Exception {
+        FreeStyleProject project = setupSimpleProject("**");
+        project.addTrigger(new SCMTrigger(""));
+        project.setQuietPeriod(600);
+        commit("commitFile1", johnDoe, "Commit number 1");
+        ObjectId first = git.revParse("HEAD");
+        commit("commitFile2", johnDoe, "Commit number 2");
+        ObjectId second = git.revParse("HEAD");
+        git.branch("topic");
+        URIish uri = new URIish(workDir.getAbsolutePath());
+        GitStatus.HudsonAbstractProjectListener listener = new GitStatus.HudsonAbstractProjectListener();
+        try {
+            listener.onNotifyCommit(uri, first.name(), new String[]{"master"});
+            listener.onNotifyCommit(uri, second.name(), new String[]{"master"});
+            listener.onNotifyCommit(uri, second.name(), new String[]{"master"});
+            List<Queue.Item> queued = getQueuedItems(project);
+            assertEquals(1, queued.size());
+            assertEquals(second.name(), queued.get(0).getAction(RevisionParameterAction.class).commit);
+
+            listener.onNotifyCommit(uri, first.name(), new String[]{"topic"});
+            assertEquals(2, getQueuedItems(project).size());
+        } finally {
+            Hudson.getInstance().getQueue().clear();
+        }
+    }
+
+    private static List<Queue.Item> getQueuedItems(FreeStyleProject project) {
+        List<Queue.Item> queued = new ArrayList<Queue.Item>();
+        for (Queue.Item item : Hudson.getInstance().getQueue().getItems()) {
+            if (item.task == project) {
+                queued.add(item);
+            }
+        }
+        return queued;
+    }
+}
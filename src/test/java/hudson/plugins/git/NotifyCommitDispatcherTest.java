@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git;
+
+import org.eclipse.jgit.transport.URIish;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link NotifyCommitDispatcher}
+ */
+public class NotifyCommitDispatcherTest {
+
+    @Test
+    public void testCoalescing() throws Exception {
+        NotifyCommitDispatcher dispatcher = new NotifyCommitDispatcher(1, 2, Long.MAX_VALUE / 2);
+        assertTrue(dispatcher.submit(new URIish("git://example.com/repo.git"), null, new String[]{"master", "topic"}));
+        assertTrue(dispatcher.submit(new URIish("ssh://git@example.com/repo"), null, new String[]{"topic", "master"}));
+        assertTrue(dispatcher.submit(new URIish("git://example.com/repo.git"), null, new String[0]));
+        assertFalse(dispatcher.submit(new URIish("git://example.com/other.git"), null, new String[0]));
+
+        assertEquals(2, dispatcher.getQueueDepth());
+        assertEquals(4, dispatcher.getReceived());
+        assertEquals(1, dispatcher.getCoalesced());
+        assertEquals(1, dispatcher.getRejected());
+        assertEquals(0, dispatcher.getDispatched());
+        assertEquals(0.25, dispatcher.getCoalescingRatio(), 0.001);
+    }
+
+    @Test
+    public void testCoalescingOfDifferentCommits() throws Exception {
+        NotifyCommitDispatcher dispatcher = new NotifyCommitDispatcher(1, 10, Long.MAX_VALUE / 2);
+        URIish uri = new URIish("git://example.com/repo.git");
+        assertTrue(dispatcher.submit(uri, "0123456789012345678901234567890123456789", new String[]{"master"}));
+        assertTrue(dispatcher.submit(uri, "9876543210987654321098765432109876543210", new String[]{"master"}));
+        assertTrue(dispatcher.submit(uri, "9876543210987654321098765432109876543210", new String[]{"topic"}));
+
+        assertEquals(2, dispatcher.getQueueDepth());
+        assertEquals(1, dispatcher.getCoalesced());
+    }
+}
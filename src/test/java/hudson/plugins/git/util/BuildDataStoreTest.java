@@ -0,0 +1,229 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import hudson.Util;
+import hudson.model.Result;
+import hudson.plugins.git.Branch;
+import hudson.plugins.git.Revision;
+import hudson.plugins.git.converter.ObjectIdConverter;
+import hudson.util.XStream2;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link BuildDataStore}
+ */
+public class BuildDataStoreTest {
+    private File tmp;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        tmp = Util.createTempDir();
+        file = new File(tmp, BuildDataStore.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteRecursive(tmp);
+    }
+
+    private static ObjectId sha1(int i) {
+        return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, Constants.encode(Integer.toString(i)));
+    }
+
+    private static Build build(int number, ObjectId sha1, String... branches) {
+        Branch[] revisionBranches = new Branch[branches.length];
+        for (int i = 0; i < branches.length; i++) {
+            revisionBranches[i] = new Branch(branches[i], sha1);
+        }
+        return new Build(new Revision(sha1, Arrays.asList(revisionBranches)), number, null);
+    }
+
+    @Test
+    public void testRecordsOnlyChangedBranches() throws Exception {
+        BuildDataStore store = new BuildDataStore(file);
+        BuildData data = new BuildData();
+        data.saveBuild(build(1, sha1(1), "origin/master", "origin/stable"));
+        store.record(1, data.getBuildsByBranchName());
+        data.saveBuild(build(2, sha1(2), "origin/master"));
+        store.record(2, data.getBuildsByBranchName());
+        store.record(2, data.getBuildsByBranchName());
+
+        assertEquals(3, FileUtils.readLines(file).size());
+
+        Map<String, Build> asOf1 = new BuildDataStore(file).getBuildsByBranchName(1);
+        assertEquals(2, asOf1.size());
+        assertSame(asOf1.get("origin/master"), asOf1.get("origin/stable"));
+        assertEquals(2, asOf1.get("origin/master").revision.getBranches().size());
+
+        Map<String, Build> asOf2 = new BuildDataStore(file).getBuildsByBranchName(2);
+        assertEquals(sha1(2), asOf2.get("origin/master").getSHA1());
+        assertEquals(2, asOf2.get("origin/master").getBuildNumber());
+        assertEquals(sha1(1), asOf2.get("origin/stable").getSHA1());
+    }
+
+    @Test
+    public void testBuildsCompletingOutOfOrder() throws Exception {
+        BuildDataStore store = new BuildDataStore(file);
+        BuildData asOf4 = new BuildData();
+        asOf4.saveBuild(build(4, sha1(4), "origin/b"));
+        store.record(4, asOf4.getBuildsByBranchName());
+        // builds #5 and #6 both start from the build data of #4, #6 completes first
+        BuildData asOf6 = asOf4.clone();
+        asOf6.saveBuild(build(6, sha1(6), "origin/b"));
+        store.record(6, asOf6.getBuildsByBranchName());
+        BuildData asOf5 = asOf4.clone();
+        asOf5.saveBuild(build(5, sha1(5), "origin/c"));
+        store.record(5, asOf5.getBuildsByBranchName());
+
+        for (BuildDataStore read : Arrays.asList(store, new BuildDataStore(file))) {
+            Map<String, Build> builds = read.getBuildsByBranchName(6);
+            assertEquals(6, builds.get("origin/b").getBuildNumber());
+            assertEquals(sha1(6), builds.get("origin/b").getSHA1());
+            assertEquals(2, builds.size());
+            assertEquals(4, read.getBuildsByBranchName(5).get("origin/b").getBuildNumber());
+            assertEquals(5, read.getBuildsByBranchName(5).get("origin/c").getBuildNumber());
+        }
+    }
+
+    @Test
+    public void testReadsLinesWithoutRecordingBuild() throws Exception {
+        FileUtils.writeStringToFile(file, "2 " + sha1(2).name() + " SUCCESS - origin/master\n");
+        BuildDataStore store = new BuildDataStore(file);
+        assertTrue(store.getBuildsByBranchName(1).isEmpty());
+        assertEquals(sha1(2), store.getBuildsByBranchName(2).get("origin/master").getSHA1());
+    }
+
+    @Test
+    public void testResultAndMergeRevision() throws Exception {
+        BuildDataStore store = new BuildDataStore(file);
+        Build build = new Build(new Revision(sha1(1), Arrays.asList(new Branch("origin/topic", sha1(1)))), 3,
+            Result.FAILURE);
+        build.mergeRevision = new Revision(sha1(2));
+        BuildData data = new BuildData();
+        data.saveBuild(build);
+        store.record(3, data.getBuildsByBranchName());
+
+        Build read = new BuildDataStore(file).getBuildsByBranchName(3).get("origin/topic");
+        assertEquals(Result.FAILURE, read.getBuildResult());
+        assertEquals(sha1(2), read.mergeRevision.getSha1());
+        assertTrue(new BuildDataStore(file).getBuildsByBranchName(2).isEmpty());
+    }
+
+    @Test
+    public void testLatestBuildNumber() throws Exception {
+        BuildDataStore store = new BuildDataStore(file);
+        assertEquals(0, store.getLatestBuildNumber());
+        store.setLatestBuildNumber(3);
+        store.setLatestBuildNumber(2);
+        assertEquals(3, store.getLatestBuildNumber());
+        assertEquals(3, new BuildDataStore(file).getLatestBuildNumber());
+
+        new File(tmp, BuildDataStore.LATEST_FILE_NAME).delete();
+        assertEquals(0, store.getLatestBuildNumber());
+    }
+
+    @Test
+    public void testStoredBuildDataIsPersistedWithoutBranches() throws Exception {
+        BuildDataStore store = new BuildDataStore(file);
+        BuildData data = new BuildData();
+        data.saveBuild(build(1, sha1(1), "origin/master"));
+        data.saveBuild(build(2, sha1(2), "origin/feature"));
+        data.store(store, 2);
+
+        XStream2 xstream = new XStream2();
+        xstream.registerConverter(new ObjectIdConverter());
+        String xml = xstream.toXML(data);
+        assertFalse(xml, xml.contains("buildsByBranchName"));
+
+        BuildData read = (BuildData) xstream.fromXML(xml);
+        assertEquals(2, read.getStoredBuildNumber());
+        assertNull(read.buildsByBranchName);
+        assertEquals(sha1(2), read.getLastBuiltRevision().getSha1());
+        read.attach(store);
+        assertTrue(read.hasBeenBuilt(sha1(1)));
+        assertEquals(2, read.getBuildsByBranchName().size());
+    }
+
+    @Test
+    public void testStoredBuildDataIsSerializedWithBranches() throws Exception {
+        BuildDataStore store = new BuildDataStore(file);
+        BuildData data = new BuildData();
+        data.saveBuild(build(1, sha1(1), "origin/master"));
+        data.saveBuild(build(2, sha1(2), "origin/feature"));
+        data.store(store, 2);
+        XStream2 xstream = new XStream2();
+        xstream.registerConverter(new ObjectIdConverter());
+        // as loaded from build.xml after a restart
+        BuildData loaded = (BuildData) xstream.fromXML(xstream.toXML(data));
+        loaded.attach(store);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(loaded);
+        out.close();
+        BuildData copy = (BuildData) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+            .readObject();
+
+        assertTrue(copy.hasBeenBuilt(sha1(1)));
+        assertTrue(copy.hasBeenBuilt(sha1(2)));
+        assertEquals(1, copy.getLastBuildOfBranch("origin/master").getBuildNumber());
+    }
+
+    @Test
+    public void testUnstoredBuildDataIsPersistedWithBranches() throws Exception {
+        BuildData data = new BuildData();
+        data.saveBuild(build(1, sha1(1), "origin/master"));
+
+        XStream2 xstream = new XStream2();
+        xstream.registerConverter(new ObjectIdConverter());
+        String xml = xstream.toXML(data);
+        assertTrue(xml, xml.contains("buildsByBranchName"));
+
+        BuildData read = (BuildData) xstream.fromXML(xml);
+        assertEquals(0, read.getStoredBuildNumber());
+        assertTrue(read.hasBeenBuilt(sha1(1)));
+        assertSame(read.lastBuild, read.getLastBuildOfBranch("origin/master"));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import hudson.plugins.git.Branch;
+import hudson.plugins.git.Revision;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link BuildData}
+ */
+public class BuildDataTest {
+
+    private static ObjectId sha1(int i) {
+        return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, Constants.encode(Integer.toString(i)));
+    }
+
+    private static Build build(String branch, ObjectId sha1, int number) {
+        Revision revision = new Revision(sha1, Collections.singletonList(new Branch(branch, sha1)));
+        return new Build(revision, number, null);
+    }
+
+    @Test
+    public void testHasBeenBuilt() {
+        BuildData data = new BuildData();
+        data.saveBuild(build("origin/master", sha1(1), 1));
+        data.saveBuild(build("origin/feature", sha1(1), 2));
+        assertTrue(data.hasBeenBuilt(sha1(1)));
+        assertFalse(data.hasBeenBuilt(sha1(2)));
+        assertFalse(data.hasBeenBuilt(null));
+
+        // sha1(1) is still the last build of origin/feature
+        data.saveBuild(build("origin/master", sha1(2), 3));
+        assertTrue(data.hasBeenBuilt(sha1(1)));
+        assertTrue(data.hasBeenBuilt(sha1(2)));
+
+        data.saveBuild(build("origin/feature", sha1(3), 4));
+        assertFalse(data.hasBeenBuilt(sha1(1)));
+        assertTrue(data.hasBeenBuilt(sha1(3)));
+    }
+
+    @Test
+    public void testCloneHasItsOwnIndex() {
+        BuildData data = new BuildData();
+        data.saveBuild(build("origin/master", sha1(1), 1));
+        BuildData clone = data.clone();
+        clone.saveBuild(build("origin/master", sha1(2), 2));
+
+        assertTrue(data.hasBeenBuilt(sha1(1)));
+        assertFalse(data.hasBeenBuilt(sha1(2)));
+        assertFalse(clone.hasBeenBuilt(sha1(1)));
+        assertTrue(clone.hasBeenBuilt(sha1(2)));
+    }
+
+    @Test
+    public void testCloneSharesBuilds() {
+        BuildData data = new BuildData();
+        for (int i = 0; i < 100; i++) {
+            data.saveBuild(build("origin/feature-" + i, sha1(i), i));
+        }
+        BuildData clone = data.clone();
+        clone.saveBuild(build("origin/feature-1", sha1(100), 100));
+
+        assertSame(data.getLastBuildOfBranch("origin/feature-2"), clone.getLastBuildOfBranch("origin/feature-2"));
+        assertEquals(1, data.getLastBuildOfBranch("origin/feature-1").getBuildNumber());
+        assertEquals(100, clone.getLastBuildOfBranch("origin/feature-1").getBuildNumber());
+        assertEquals(99, data.lastBuild.getBuildNumber());
+        assertEquals(100, clone.lastBuild.getBuildNumber());
+        assertTrue(clone.hasBeenBuilt(sha1(100)));
+        assertFalse(data.hasBeenBuilt(sha1(100)));
+    }
+
+    @Test
+    public void testIndexIsRebuiltWhenDeserialized() throws Exception {
+        BuildData data = new BuildData();
+        data.saveBuild(build("origin/master", sha1(1), 1));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(data);
+        out.close();
+        BuildData read = (BuildData) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+            .readObject();
+
+        assertTrue(read.hasBeenBuilt(sha1(1)));
+        read.saveBuild(build("origin/master", sha1(2), 2));
+        assertFalse(read.hasBeenBuilt(sha1(1)));
+    }
+
+    @Test
+    public void testManyBranches() {
+        BuildData data = new BuildData();
+        for (int i = 0; i < 50000; i++) {
+            data.saveBuild(build("origin/feature-" + i, sha1(i), i));
+        }
+        for (int i = 0; i < 50000; i++) {
+            assertTrue(data.hasBeenBuilt(sha1(i)));
+            assertFalse(data.hasBeenBuilt(sha1(i + 50000)));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for {@link BuiltSha1Index}
+ */
+public class BuiltSha1IndexTest {
+
+    /**
+     * SHA1 whose hash collides with the other SHA1s of the same group.
+     */
+    private static ObjectId sha1(int group, int id) {
+        return ObjectId.fromRaw(new int[]{id, group, id * 31, 7, 11});
+    }
+
+    @Test
+    public void testCountsLikeHashMap() {
+        Random random = new Random(42);
+        Map<ObjectId, Integer> expected = new HashMap<ObjectId, Integer>();
+        BuiltSha1Index index = new BuiltSha1Index();
+        for (int i = 0; i < 20000; i++) {
+            int k = random.nextInt(2000);
+            ObjectId sha1 = k % 3 == 0 ? sha1(k % 7, k) : sha1(k * 0x9E3779B9, k);
+            int count = expected.containsKey(sha1) ? expected.get(sha1) : 0;
+            int delta = random.nextInt(4) == 0 ? -1 : 1;
+            if (count + delta > 0) {
+                expected.put(sha1, count + delta);
+            } else {
+                expected.remove(sha1);
+            }
+            index.add(sha1, delta);
+            assertEquals(count + delta > 0 ? count + delta : 0, index.get(sha1));
+        }
+        assertEquals(expected.size(), index.size());
+        for (Map.Entry<ObjectId, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), index.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testClonesAreIndependent() {
+        BuiltSha1Index index = new BuiltSha1Index();
+        for (int i = 0; i < 1000; i++) {
+            index.add(sha1(i % 10, i), 1);
+        }
+        BuiltSha1Index clone = index.clone();
+        clone.add(sha1(3, 3), 1);
+        clone.add(sha1(4, 4), -1);
+        clone.add(sha1(5, 2000), 1);
+
+        assertEquals(1, index.get(sha1(3, 3)));
+        assertEquals(1, index.get(sha1(4, 4)));
+        assertEquals(0, index.get(sha1(5, 2000)));
+        assertEquals(1000, index.size());
+        assertEquals(2, clone.get(sha1(3, 3)));
+        assertEquals(0, clone.get(sha1(4, 4)));
+        assertEquals(1, clone.get(sha1(5, 2000)));
+        assertEquals(1000, clone.size());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import hudson.Util;
+import java.io.File;
+import java.io.OutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for {@link ChangelogStream}
+ */
+public class ChangelogStreamTest {
+    private File tmp;
+
+    @Before
+    public void setUp() throws Exception {
+        tmp = Util.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteRecursive(tmp);
+    }
+
+    private void write(ChangelogStream changelog, String text) throws Exception {
+        OutputStream out = changelog.open();
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        changelog.await();
+    }
+
+    @Test
+    public void testPlain() throws Exception {
+        File file = new File(tmp, "changelog.xml");
+        FileUtils.writeStringToFile(file, "previous build");
+        write(ChangelogStream.create(file, false, false), "commit 1\n");
+        assertEquals("commit 1\n", FileUtils.readFileToString(file, "UTF-8"));
+    }
+
+    @Test
+    public void testCompressedAppend() throws Exception {
+        File file = new File(tmp, "changelog.xml");
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            large.append("commit ").append(i).append('\n');
+        }
+        write(ChangelogStream.create(file, false, true), large.toString());
+        write(ChangelogStream.create(file, true, true), "commit last\n");
+        assertEquals(large + "commit last\n", FileUtils.readFileToString(file, "UTF-8"));
+    }
+
+    @Test(timeout = 10000)
+    public void testUnusedStreamDoesNotStallTheBuild() throws Exception {
+        File file = new File(tmp, "changelog.xml");
+        ChangelogStream changelog = ChangelogStream.create(file, false, true);
+        changelog.closeIfUnused();
+        changelog.closeIfUnused();
+        changelog.await();
+        assertEquals("", FileUtils.readFileToString(file, "UTF-8"));
+    }
+}
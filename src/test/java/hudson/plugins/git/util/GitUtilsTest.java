@@ -23,8 +23,13 @@
  */
 package hudson.plugins.git.util;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.jgit.transport.RefSpec;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -42,4 +47,52 @@ public class GitUtilsTest {
         assertTrue(GitUtils.isEmpty(new String[]{"",""}));
         assertFalse(GitUtils.isEmpty(new String[]{"url1", ""}));
     }
+
+    @Test
+    public void testNarrowRefSpecsForLiteralBranches() {
+        RefSpec all = new RefSpec("+refs/heads/*:refs/remotes/origin/*");
+        assertEquals(Arrays.asList(new RefSpec("+refs/heads/master:refs/remotes/origin/master"),
+            new RefSpec("+refs/heads/rel/1.0:refs/remotes/origin/rel/1.0")),
+            GitUtils.narrowRefSpecs("origin", all, Arrays.asList("master", "origin/rel/1.0", "other/master")));
+    }
+
+    @Test
+    public void testNarrowRefSpecsForWildcardBranches() {
+        RefSpec all = new RefSpec("+refs/heads/*:refs/remotes/origin/*");
+        assertEquals(Collections.singletonList(new RefSpec("+refs/heads/feature/*:refs/remotes/origin/feature/*")),
+            GitUtils.narrowRefSpecs("origin", all, Arrays.asList("*/feature/*", "origin/feature/**")));
+        assertEquals(Collections.singletonList(all), GitUtils.narrowRefSpecs("origin", all, Arrays.asList("**")));
+        assertEquals(Collections.singletonList(all),
+            GitUtils.narrowRefSpecs("origin", all, Arrays.asList("master", "*/release-*")));
+    }
+
+    @Test
+    public void testNarrowRefSpecsKeepsCustomRefSpec() {
+        RefSpec custom = new RefSpec("+refs/pull/*:refs/remotes/origin/pr/*");
+        List<RefSpec> refSpecs = GitUtils.narrowRefSpecs("origin", custom, Arrays.asList("master"));
+        assertEquals(Collections.singletonList(custom), refSpecs);
+        RefSpec all = new RefSpec("+refs/heads/*:refs/remotes/origin/*");
+        assertEquals(Collections.singletonList(all),
+            GitUtils.narrowRefSpecs("origin", all, Arrays.asList("other/master")));
+    }
+
+    @Test
+    public void testNarrowRefSpecsKeepsRefSpecForShaAndQualifiedRefs() {
+        RefSpec all = new RefSpec("+refs/heads/*:refs/remotes/origin/*");
+        assertEquals(Collections.singletonList(all), GitUtils.narrowRefSpecs("origin", all,
+            Arrays.asList("master", "0123456789abcdef0123456789abcdef01234567")));
+        assertEquals(Collections.singletonList(all),
+            GitUtils.narrowRefSpecs("origin", all, Arrays.asList("master", "refs/tags/v1.0")));
+    }
+
+    @Test
+    public void testIsNarrowedToHeads() {
+        RefSpec all = new RefSpec("+refs/heads/*:refs/remotes/origin/*");
+        List<RefSpec> refSpecs = GitUtils.narrowRefSpecs("origin", all, Arrays.asList("master", "v1.0"));
+        List<String> heads = Arrays.asList("refs/heads/master", "refs/heads/v1.0");
+        assertTrue(GitUtils.isNarrowedToHeads(refSpecs, heads));
+        // a tag cannot be told from a branch by its name
+        assertFalse(GitUtils.isNarrowedToHeads(refSpecs, Arrays.asList("refs/heads/master")));
+        assertTrue(GitUtils.isNarrowedToHeads(Collections.singletonList(all), Collections.<String>emptyList()));
+    }
 }
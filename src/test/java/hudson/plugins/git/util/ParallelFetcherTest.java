@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link ParallelFetcher}
+ */
+public class ParallelFetcherTest {
+
+    @Test
+    public void testLogIsOrdered() throws Exception {
+        // the first fetch only finishes once the last one has started, so they must run concurrently
+        final CountDownLatch lastStarted = new CountDownLatch(1);
+        List<ParallelFetcher.Fetch> fetches = new ArrayList<ParallelFetcher.Fetch>();
+        fetches.add(new FakeFetch("a", true) {
+            @Override
+            public boolean fetch(TaskListener listener) {
+                try {
+                    assertTrue(lastStarted.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                return super.fetch(listener);
+            }
+        });
+        fetches.add(new FakeFetch("b", true));
+        fetches.add(new FakeFetch("c", true) {
+            @Override
+            public boolean fetch(TaskListener listener) {
+                lastStarted.countDown();
+                return super.fetch(listener);
+            }
+        });
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        boolean[] fetched = ParallelFetcher.fetchAll(fetches, new StreamTaskListener(log));
+        assertTrue(fetched[0] && fetched[1] && fetched[2]);
+        String nl = System.getProperty("line.separator");
+        assertEquals("fetched a" + nl + "fetched b" + nl + "fetched c" + nl, log.toString());
+    }
+
+    @Test
+    public void testFailedFetchesAreRetried() throws Exception {
+        FakeFetch flaky = new FakeFetch("flaky", false);
+        FakeFetch broken = new FakeFetch("broken", false) {
+            @Override
+            public boolean fetch(TaskListener listener) {
+                calls.incrementAndGet();
+                return false;
+            }
+        };
+        List<ParallelFetcher.Fetch> fetches = new ArrayList<ParallelFetcher.Fetch>();
+        fetches.add(flaky);
+        fetches.add(broken);
+
+        boolean[] fetched = ParallelFetcher.fetchAll(fetches, new StreamTaskListener(new ByteArrayOutputStream()));
+        assertTrue(fetched[0]);
+        assertFalse(fetched[1]);
+        assertEquals(2, flaky.calls.get());
+        assertEquals(2, broken.calls.get());
+    }
+
+    private static class FakeFetch implements ParallelFetcher.Fetch {
+        protected final AtomicInteger calls = new AtomicInteger();
+        private final String name;
+        private final boolean succeedFirst;
+
+        private FakeFetch(String name, boolean succeedFirst) {
+            this.name = name;
+            this.succeedFirst = succeedFirst;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean fetch(TaskListener listener) {
+            if (calls.incrementAndGet() == 1 && !succeedFirst) {
+                return false;
+            }
+            listener.getLogger().println("fetched " + name);
+            return true;
+        }
+    }
+}
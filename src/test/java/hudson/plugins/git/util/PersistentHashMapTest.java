@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link PersistentHashMap}
+ */
+public class PersistentHashMapTest {
+
+    /**
+     * Key whose hash code collides with every other key of the same group.
+     */
+    private static final class Key implements Serializable {
+        private final int group;
+        private final int id;
+
+        private Key(int group, int id) {
+            this.group = group;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).group == group && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return group;
+        }
+    }
+
+    @Test
+    public void testBehavesLikeHashMap() {
+        Random random = new Random(42);
+        Map<Object, Integer> expected = new HashMap<Object, Integer>();
+        PersistentHashMap<Object, Integer> map = new PersistentHashMap<Object, Integer>();
+        for (int i = 0; i < 20000; i++) {
+            int k = random.nextInt(2000);
+            Object key = k % 3 == 0 ? new Key(k % 7, k) : (k == 1 ? null : "key-" + k);
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        for (Object key : expected.keySet()) {
+            assertTrue(map.containsKey(key));
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        int count = 0;
+        for (Iterator<Map.Entry<Object, Integer>> it = map.entrySet().iterator(); it.hasNext(); count++) {
+            if (it.next().getValue() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(expected.size(), count);
+        for (Iterator<Integer> it = expected.values().iterator(); it.hasNext(); ) {
+            if (it.next() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(expected, map);
+    }
+
+    @Test
+    public void testCloneIsIndependent() {
+        PersistentHashMap<String, String> map = new PersistentHashMap<String, String>();
+        for (int i = 0; i < 1000; i++) {
+            map.put("branch-" + i, "a");
+        }
+        PersistentHashMap<String, String> clone = map.clone();
+        clone.put("branch-1", "b");
+        clone.put("new", "b");
+        clone.remove("branch-2");
+        map.put("branch-3", "c");
+
+        assertEquals("a", map.get("branch-1"));
+        assertNull(map.get("new"));
+        assertEquals("a", map.get("branch-2"));
+        assertEquals(1000, map.size());
+        assertEquals("b", clone.get("branch-1"));
+        assertEquals("b", clone.get("new"));
+        assertFalse(clone.containsKey("branch-2"));
+        assertEquals("a", clone.get("branch-3"));
+        assertEquals(1000, clone.size());
+
+        clone.clear();
+        assertTrue(clone.isEmpty());
+        assertEquals(1000, map.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSerialization() throws Exception {
+        PersistentHashMap<Object, String> map = new PersistentHashMap<Object, String>();
+        for (int i = 0; i < 100; i++) {
+            map.put(new Key(i % 5, i), "value-" + i);
+        }
+        map.put(null, null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(map);
+        out.close();
+        Object read = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(map, read);
+        assertTrue(((Map<Object, String>) read).containsKey(null));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link PollingBackoff}
+ */
+public class PollingBackoffTest {
+
+    @Test
+    public void testIntervalAdaptsWithinBounds() throws Exception {
+        PollingBackoff backoff = new PollingBackoff(1000, 5000);
+        List<URIish> uris = Collections.singletonList(new URIish("git://example.com/repo.git"));
+        assertEquals(1000, backoff.getInterval("job"));
+        assertTrue(backoff.isDue("job", "repo master", 0));
+
+        backoff.polled("job", "repo master", uris, false, 10000);
+        assertEquals(2000, backoff.getInterval("job"));
+        assertFalse(backoff.isDue("job", "repo master", 11999));
+        assertTrue(backoff.isDue("job", "repo master", 12000));
+
+        backoff.polled("job", "repo master", uris, false, 12000);
+        backoff.polled("job", "repo master", uris, false, 16000);
+        assertEquals(5000, backoff.getInterval("job"));
+
+        backoff.polled("job", "repo master", uris, true, 21000);
+        assertEquals(2500, backoff.getInterval("job"));
+        backoff.polled("job", "repo master", uris, true, 23500);
+        backoff.polled("job", "repo master", uris, true, 25000);
+        assertEquals(1000, backoff.getInterval("job"));
+    }
+
+    @Test
+    public void testChangedConfigurationStartsOver() throws Exception {
+        PollingBackoff backoff = new PollingBackoff(1000, 5000);
+        List<URIish> uris = Collections.singletonList(new URIish("git://example.com/repo.git"));
+        backoff.polled("job", "repo master", uris, false, 10000);
+        assertFalse(backoff.isDue("job", "repo master", 10001));
+        assertTrue(backoff.isDue("job", "repo stable", 10001));
+
+        backoff.polled("job", "repo stable", uris, false, 10001);
+        assertEquals(2000, backoff.getInterval("job"));
+    }
+
+    @Test
+    public void testNotifiedRepositoryIsDue() throws Exception {
+        PollingBackoff backoff = new PollingBackoff(1000, 5000);
+        backoff.polled("job", "repo master", Collections.singletonList(new URIish("git://example.com/repo.git")),
+            false, 10000);
+        backoff.polled("other", "other master", Collections.singletonList(new URIish("git://example.com/other.git")),
+            false, 10000);
+
+        backoff.invalidate(new URIish("git://example.com/repo"));
+        assertTrue(backoff.isDue("job", "repo master", 10001));
+        assertFalse(backoff.isDue("other", "other master", 10001));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitAPI;
+import hudson.util.StreamTaskListener;
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link ReferenceCache}
+ */
+public class ReferenceCacheTest {
+    private File tmp;
+    private File remoteDir;
+    private String url;
+    private ObjectId head;
+    private TaskListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        tmp = Util.createTempDir();
+        listener = StreamTaskListener.fromStdout();
+        File remote = new File(tmp, "remote");
+        Git git = Git.init().setDirectory(remote).call();
+        PersonIdent ident = new PersonIdent("John Doe", "john@doe.com");
+        head = git.commit().setMessage("initial").setAuthor(ident).setCommitter(ident).call();
+        git.getRepository().close();
+        remoteDir = remote;
+        url = remote.getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteRecursive(tmp);
+    }
+
+    @Test
+    public void testCloneBorrowsObjectsFromMirror() throws Exception {
+        ReferenceCache cache = new ReferenceCache(new File(tmp, "cache"));
+        File mirror = cache.update("git", url, listener, new EnvVars());
+        assertEquals(cache.getMirror(url), mirror);
+        assertTrue(new File(mirror, "objects").isDirectory());
+
+        RemoteConfig remoteConfig = new RemoteConfig(new Config(), "origin");
+        remoteConfig.addURI(new URIish(url));
+        remoteConfig.addFetchRefSpec(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
+        File workspace = new File(tmp, "workspace");
+        GitAPI git = new GitAPI("git", new FilePath(workspace), listener, new EnvVars());
+        try {
+            git.clone_cgit(remoteConfig, 0, mirror.getAbsolutePath());
+            assertEquals(head, git.revParse("origin/master"));
+        } finally {
+            git.close();
+        }
+
+        File gitDir = new File(workspace, ".git");
+        assertTrue(ReferenceCache.isLinked(gitDir, mirror));
+        // every object came from the mirror
+        for (String name : new File(gitDir, "objects").list()) {
+            assertTrue(name, name.equals("info") || name.equals("pack"));
+        }
+        assertEquals(0, new File(gitDir, "objects/pack").list().length);
+
+        ReferenceCache.link(gitDir, mirror);
+        assertEquals(1, Util.loadFile(new File(gitDir, "objects/info/alternates")).trim().split("\n").length);
+        assertFalse(ReferenceCache.isLinked(gitDir, new File(tmp, "other")));
+    }
+
+    @Test
+    public void testPollingSharesOneFetchUntilNotified() throws Exception {
+        ReferenceCache cache = new ReferenceCache(new File(tmp, "cache"));
+        Git git = Git.open(remoteDir);
+        git.branchCreate().setName("topic").call();
+        Map<String, ObjectId> heads = cache.getHeads("git", url, listener, new EnvVars(), cache.getNotification(url));
+        assertEquals(head, heads.get("refs/heads/master"));
+        assertEquals(head, heads.get("refs/heads/topic"));
+
+        PersonIdent ident = new PersonIdent("Jane Doe", "jane@doe.com");
+        ObjectId next = git.commit().setMessage("next").setAuthor(ident).setCommitter(ident).call();
+        git.branchDelete().setBranchNames("topic").setForce(true).call();
+        git.getRepository().close();
+
+        // updated moments ago by the first poll
+        assertEquals(head, cache.getHeads("git", url, listener, new EnvVars(), cache.getNotification(url))
+            .get("refs/heads/master"));
+        cache.invalidate(new URIish(url));
+        assertEquals(1, cache.getNotification(url));
+        heads = cache.getHeads("git", url, listener, new EnvVars(), cache.getNotification(url));
+        assertEquals(Collections.singletonMap("refs/heads/master", next), heads);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link RegionMatcher}
+ */
+public class RegionMatcherTest {
+    private static final String[] REGIONS = {
+        "vendor/.*", "docs/README", "src/main.*", ".*\\.txt", "(?i)build/.*\\.XML", "(a+)b\\1", "(?<x>lib)/\\k<x>"
+    };
+    private static final String[] PATHS = {
+        "vendor/lib/a.jar", "vendor", "vendor/", "docs/README", "docs/README.md", "src/main/A.java", "src/mainly",
+        "src/test/A.java", "notes.txt", "notes.txt.bak", "build/out.xml", "BUILD/OUT.XML", "aabaa", "aaba",
+        "lib/lib", "lib/x", "vendor/with\nnewline", ""
+    };
+
+    @Test
+    public void testMatchesLikeIndividualPatterns() {
+        RegionMatcher matcher = RegionMatcher.compile(REGIONS);
+        for (String path : PATHS) {
+            boolean expected = false;
+            for (String region : REGIONS) {
+                expected |= Pattern.compile(region).matcher(path).matches();
+            }
+            assertEquals(path, expected, matcher.matches(path));
+        }
+    }
+
+    @Test
+    public void testMatchAll() {
+        RegionMatcher matcher = RegionMatcher.compile(new String[]{".*"});
+        assertTrue(matcher.matches(""));
+        assertTrue(matcher.matches("any/path"));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertTrue(RegionMatcher.compile(null).isEmpty());
+        assertTrue(RegionMatcher.compile(new String[0]).isEmpty());
+        assertFalse(RegionMatcher.compile(null).matches("any/path"));
+        assertFalse(RegionMatcher.compile(REGIONS).isEmpty());
+    }
+
+    @Test
+    public void testToSparseCheckoutPatterns() {
+        assertEquals(Arrays.asList("/vendor/", "/docs/README", "/src/", "/build/", "/app/v1.0/", "/lib/"),
+            RegionMatcher.toSparseCheckoutPatterns(new String[]{
+                "vendor/.*", "docs/README", "src/main.*", "^build/(x|y)\\.xml", "app/v1\\.0/.*", "lib/a?/b"
+            }));
+        assertEquals(Collections.<String>emptyList(), RegionMatcher.toSparseCheckoutPatterns(null));
+        assertEquals(Arrays.asList("/a\\*b"), RegionMatcher.toSparseCheckoutPatterns(new String[]{"a\\*b"}));
+    }
+
+    @Test
+    public void testToSparseCheckoutPatternsNeedingTheWholeTree() {
+        assertNull(RegionMatcher.toSparseCheckoutPatterns(new String[]{"vendor/.*", ".*\\.txt"}));
+        assertNull(RegionMatcher.toSparseCheckoutPatterns(new String[]{"a/.*|b/.*"}));
+        assertNull(RegionMatcher.toSparseCheckoutPatterns(new String[]{"a?/b"}));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.plugins.git.GitAPI;
+import hudson.util.StreamTaskListener;
+import java.io.File;
+import java.util.Map;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for {@link RemoteHeadsCache}
+ */
+public class RemoteHeadsCacheTest {
+    private File tmp;
+    private String url;
+    private ObjectId head;
+
+    @Before
+    public void setUp() throws Exception {
+        tmp = Util.createTempDir();
+        File remote = new File(tmp, "remote");
+        Git git = Git.init().setDirectory(remote).call();
+        PersonIdent ident = new PersonIdent("John Doe", "john@doe.com");
+        head = git.commit().setMessage("initial").setAuthor(ident).setCommitter(ident).call();
+        git.branchCreate().setName("feature/x").call();
+        git.getRepository().close();
+        url = remote.getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteRecursive(tmp);
+    }
+
+    @Test
+    public void testHeadsAreSharedUntilInvalidated() throws Exception {
+        RemoteHeadsCache cache = new RemoteHeadsCache(Long.MAX_VALUE / 2);
+        CountingGitAPI git = new CountingGitAPI(tmp);
+
+        Map<String, ObjectId> heads = cache.getHeads(git, url);
+        assertEquals(head, heads.get("refs/heads/master"));
+        assertEquals(head, heads.get("refs/heads/feature/x"));
+        cache.getHeads(git, url);
+        assertEquals(1, git.calls);
+
+        cache.invalidate(new URIish("file://" + url + ".git/"));
+        assertEquals(0, cache.size());
+        cache.getHeads(git, url);
+        assertEquals(2, git.calls);
+    }
+
+    @Test
+    public void testExpiredHeadsAreListedAgain() throws Exception {
+        RemoteHeadsCache cache = new RemoteHeadsCache(-1);
+        CountingGitAPI git = new CountingGitAPI(tmp);
+        cache.getHeads(git, url);
+        cache.getHeads(git, url);
+        assertEquals(2, git.calls);
+        assertEquals(0, cache.size());
+    }
+
+    private static class CountingGitAPI extends GitAPI {
+        private int calls;
+
+        private CountingGitAPI(File workspace) {
+            super("git", new FilePath(workspace), StreamTaskListener.fromStdout(), new EnvVars());
+        }
+
+        @Override
+        public Map<String, ObjectId> getRemoteHeads(String remoteRepoUrl) {
+            calls++;
+            return super.getRemoteHeads(remoteRepoUrl);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import hudson.Util;
+import java.io.File;
+import java.io.IOException;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for {@link RepositoryPool}
+ */
+public class RepositoryPoolTest {
+    private File tmp;
+
+    @Before
+    public void setUp() throws Exception {
+        tmp = Util.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteRecursive(tmp);
+    }
+
+    private File initRepository(String name) throws Exception {
+        File dir = new File(tmp, name);
+        Repository repository = Git.init().setDirectory(dir).call().getRepository();
+        repository.close();
+        return repository.getDirectory();
+    }
+
+    @Test
+    public void testAcquireSharesRepository() throws Exception {
+        RepositoryPool pool = new RepositoryPool(4, Long.MAX_VALUE);
+        File gitDir = initRepository("a");
+
+        Repository first = pool.acquire(gitDir);
+        Repository second = pool.acquire(new File(gitDir.getParentFile(), "../a/.git"));
+        assertSame(first, second);
+
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.size());
+        assertSame(first, pool.acquire(gitDir));
+    }
+
+    @Test
+    public void testSizeCapEvictsIdleRepositories() throws Exception {
+        RepositoryPool pool = new RepositoryPool(1, Long.MAX_VALUE);
+        Repository a = pool.acquire(initRepository("a"));
+        Repository b = pool.acquire(initRepository("b"));
+
+        // both are borrowed, so neither may be closed
+        assertEquals(2, pool.size());
+
+        pool.release(a);
+        assertEquals(1, pool.size());
+        pool.release(b);
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        RepositoryPool pool = new RepositoryPool(4, -1);
+        Repository a = pool.acquire(initRepository("a"));
+        pool.release(a);
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        RepositoryPool pool = new RepositoryPool(4, Long.MAX_VALUE);
+        File gitDir = initRepository("a");
+        Repository a = pool.acquire(gitDir);
+
+        pool.invalidate(gitDir);
+        assertEquals(0, pool.size());
+
+        Repository reopened = pool.acquire(gitDir);
+        assertNotSame(a, reopened);
+        pool.release(a);
+        pool.release(reopened);
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testDeletedRepositoryIsReopened() throws Exception {
+        RepositoryPool pool = new RepositoryPool(4, Long.MAX_VALUE);
+        File gitDir = initRepository("a");
+        Repository a = pool.acquire(gitDir);
+        pool.release(a);
+
+        Util.deleteRecursive(gitDir.getParentFile());
+        try {
+            pool.acquire(gitDir);
+            fail("repository should not be found");
+        } catch (IOException e) {
+            // expected, the repository is gone
+        }
+        assertEquals(0, pool.size());
+    }
+}
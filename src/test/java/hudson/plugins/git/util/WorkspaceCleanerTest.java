@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Oracle Corporation, Andrew Bayer, Anton Kozak, Nikita Levyankov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.plugins.git.util;
+
+import hudson.FilePath;
+import hudson.Util;
+import java.io.File;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link WorkspaceCleaner}
+ */
+public class WorkspaceCleanerTest {
+    private File tmp;
+    private Repository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        tmp = Util.createTempDir();
+        Git git = Git.init().setDirectory(tmp).call();
+        write("tracked/a.txt", "a");
+        write(".gitignore", "*.log\n");
+        git.add().addFilepattern(".").call();
+        PersonIdent ident = new PersonIdent("John Doe", "john@doe.com");
+        git.commit().setMessage("initial").setAuthor(ident).setCommitter(ident).call();
+        repository = git.getRepository();
+
+        write("untracked.txt", "12345");
+        write("tracked/untracked.txt", "123");
+        write("out/classes/A.class", "1234567");
+        write("out/classes/b/B.class", "1");
+        write("build.log", "ignored");
+        Git.init().setDirectory(new File(tmp, "out/nested")).call().getRepository().close();
+        Git.init().setDirectory(new File(tmp, "other")).call().getRepository().close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.close();
+        Util.deleteRecursive(tmp);
+    }
+
+    private void write(String path, String content) throws Exception {
+        new FilePath(new File(tmp, path)).write(content, "UTF-8");
+    }
+
+    private boolean exists(String path) {
+        return new File(tmp, path).exists();
+    }
+
+    @Test
+    public void testCleanKeepsTrackedAndIgnoredFiles() throws Exception {
+        WorkspaceCleaner cleaner = new WorkspaceCleaner(false);
+        cleaner.clean(repository);
+
+        assertEquals(4, cleaner.getFiles());
+        assertEquals(16, cleaner.getBytes());
+        assertFalse(exists("untracked.txt"));
+        assertFalse(exists("tracked/untracked.txt"));
+        assertFalse(exists("out/classes"));
+        assertTrue(exists("tracked/a.txt"));
+        assertTrue(exists(".gitignore"));
+        assertTrue(exists("build.log"));
+        assertTrue(exists("out/nested/.git"));
+        assertTrue(exists("other/.git"));
+    }
+
+    @Test
+    public void testCleanIgnoredFiles() throws Exception {
+        WorkspaceCleaner cleaner = new WorkspaceCleaner(true);
+        cleaner.clean(repository);
+
+        assertEquals(5, cleaner.getFiles());
+        assertFalse(exists("build.log"));
+        assertTrue(exists("tracked/a.txt"));
+
+        cleaner.clean(repository);
+        assertEquals(5, cleaner.getFiles());
+    }
+}